@@ -0,0 +1,241 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Журнал доступа: метод, путь, статус, размер ответа и время обработки - без тел запросов.
+// Поток запроса только кладет готовую запись в ограниченную очередь (если она полна,
+// запись отбрасывается и считается в filmorate.access.dropped), строку собирает и пишет отдельный поток.
+// Успешные запросы пишутся с вероятностью sample-rate, ошибки (4xx/5xx) - всегда.
+// Асинхронный ответ пишется один раз: по завершении, по ошибке (500) или по таймауту (503),
+// если код ошибки не выставлен раньше.
+@Component
+@ConditionalOnProperty(name = "filmorate.access-log.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("filmorate.access");
+
+    private final double sampleRate;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    public AccessLogFilter(MeterRegistry registry,
+                           @Value("${filmorate.access-log.sample-rate:1.0}") double sampleRate,
+                           @Value("${filmorate.access-log.queue-capacity:8192}") int queueCapacity) {
+        this.sampleRate = sampleRate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        FunctionCounter.builder("filmorate.access.dropped", dropped, AtomicLong::get)
+                .description("Записи журнала доступа, отброшенные из-за переполненной очереди")
+                .register(registry);
+        this.writer = new Thread(this::writeLoop, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        CountingResponse counting = new CountingResponse(response);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, counting);
+            failed = false;
+        } finally {
+            if (request.isAsyncStarted()) {
+                //Потоковый ответ дописывается уже после выхода из фильтра - пишем по завершении.
+                //После ошибки или таймаута контейнер еще вызовет onComplete: запись уже сделана
+                AtomicBoolean recorded = new AtomicBoolean();
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(request, counting, counting.getStatus(), start);
+                        }
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(request, counting, errorStatus(counting.getStatus(), 503), start);
+                        }
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(request, counting, errorStatus(counting.getStatus(), 500), start);
+                        }
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                //Необработанное исключение контейнер превратит в 500 уже после фильтра
+                record(request, counting, failed ? 500 : counting.getStatus(), start);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        writer.interrupt();
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponse response, int status, long start) {
+        if (status < 400 && (sampleRate <= 0 || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        Entry entry = new Entry(request.getMethod(), request.getRequestURI(), request.getQueryString(), status,
+                response.bytes, (System.nanoTime() - start) / 1000);
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    //Ответ мог успеть получить свой код ошибки; иначе - код по умолчанию для случившегося
+    private static int errorStatus(int status, int fallback) {
+        return status >= 400 ? status : fallback;
+    }
+
+    private void writeLoop() {
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                write(queue.take());
+                long drops = dropped.get();
+                if (drops != reportedDrops && queue.isEmpty()) {
+                    log.warn("Очередь журнала доступа переполнена, пропущено записей: {}", drops - reportedDrops);
+                    reportedDrops = drops;
+                }
+            }
+        } catch (InterruptedException e) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                write(entry);
+            }
+        }
+    }
+
+    private static void write(Entry entry) {
+        ACCESS_LOG.info("{} {}{} {} {} байт {} мкс", entry.method(), entry.path(),
+                entry.query() == null ? "" : "?" + entry.query(), entry.status(), entry.bytes(), entry.micros());
+    }
+
+    private record Entry(String method, String path, String query, int status, long bytes, long micros) {
+    }
+
+    //Считает размер тела ответа, ничего не буферизуя (через getWriter - в символах)
+    private static class CountingResponse extends HttpServletResponseWrapper {
+
+        //Пишет один поток, но асинхронный ответ дописывается не тем потоком, что читает итог
+        private volatile long bytes;
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        bytes += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                PrintWriter delegate = super.getWriter();
+                writer = new PrintWriter(delegate) {
+                    @Override
+                    public void write(int c) {
+                        super.write(c);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(char[] buf, int off, int len) {
+                        super.write(buf, off, len);
+                        bytes += len;
+                    }
+
+                    @Override
+                    public void write(String s, int off, int len) {
+                        super.write(s, off, len);
+                        bytes += len;
+                    }
+                };
+            }
+            return writer;
+        }
+    }
+}
@@ -1,17 +1,33 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.StorageUnavailableException;
+import ru.yandex.practicum.filmorate.model.ImportResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -21,42 +37,128 @@ import java.util.Map;
 @Validated
 public class FilmController {
 
+    //Больше пар за раз не принимаем, чтобы один запрос не держал хранилище слишком долго
+    static final int MAX_BATCH_SIZE = 10_000;
+
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final ResponseCache responseCache;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, ResponseCache responseCache) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
     }
 
     @PostMapping
     public ResponseEntity<?> createFilm(@RequestBody Film film) {
-        log.info("Получен запрос POST /films с телом: {}", film);
+        log.debug("Получен запрос POST /films с телом: {}", film);
         ResponseEntity<?> response = filmService.createFilm(film);
-        log.info("Ответ на запрос POST /films: {}", response);
+        log.debug("Ответ на запрос POST /films: статус {}", response.getStatusCode());
         return response;
     }
 
+    //Потоковая загрузка: по одной записи Film в строке (NDJSON), тело целиком в память не читается
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportResult importFilms(InputStream body) throws IOException {
+        log.debug("Получен запрос POST /films в формате NDJSON");
+        try (MappingIterator<Film> items = objectMapper.readerFor(Film.class).readValues(body)) {
+            return filmService.importFilms(items);
+        }
+    }
+
     @PutMapping
     public ResponseEntity<?> updateFilm(@RequestBody Film film) {
-        log.info("Получен запрос PUT /films с телом: {}", film);
+        log.debug("Получен запрос PUT /films с телом: {}", film);
         ResponseEntity<?> response = filmService.updateFilm(film);
-        log.info("Ответ на запрос PUT /films: {}", response);
+        log.debug("Ответ на запрос PUT /films: статус {}", response.getStatusCode());
         return response;
     }
 
+    //Без параметров отдаем весь список, с after/limit - страницу по возрастанию id.
+    //Диапазоны даты выхода и длительности (границы включительно) отбирают фильмы по индексам
     @GetMapping
+    public ResponseEntity<List<Film>> getFilms(@RequestParam(required = false) Long after,
+                                              @RequestParam(required = false) @Positive Integer limit,
+                                              @RequestParam(required = false)
+                                              @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedFrom,
+                                              @RequestParam(required = false)
+                                              @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate releasedTo,
+                                              @RequestParam(required = false) Integer minDuration,
+                                              @RequestParam(required = false) Integer maxDuration) {
+        FilmFilter filter = new FilmFilter(releasedFrom, releasedTo, minDuration, maxDuration);
+        int pageLimit = limit == null ? Integer.MAX_VALUE : limit;
+        if (filter.hasReleaseRange() || filter.hasDurationRange()) {
+            log.debug("Получен запрос GET /films с условиями {}, after: {}, limit: {}", filter, after, limit);
+            List<Film> found = filmService.findFilms(filter, after, pageLimit);
+            log.debug("Ответ на запрос GET /films с условиями: {} записей", found.size());
+            return new ResponseEntity<>(found, HttpStatus.OK);
+        }
+        if (after == null && limit == null) {
+            return getAllFilms();
+        }
+        log.debug("Получен запрос GET /films с параметрами after: {}, limit: {}", after, limit);
+        List<Film> page = filmService.getFilms(after, pageLimit);
+        log.debug("Ответ на запрос GET /films: {} записей", page.size());
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
     public ResponseEntity<List<Film>> getAllFilms() {
-        log.info("Получен запрос GET /films");
+        log.debug("Получен запрос GET /films");
         ResponseEntity<List<Film>> response = filmService.getAllFilms();
-        log.info("Ответ на запрос GET /films: {}", response.getBody());
+        log.debug("Ответ на запрос GET /films: {} записей", response.getBody() == null ? 0 : response.getBody().size());
         return response;
     }
 
+    //Поиск с автодополнением последнего слова, выдача постранично: offset - сколько пропустить
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam String query,
+                                  @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+                                  @RequestParam(defaultValue = "20") @Positive int limit) {
+        log.debug("Получен запрос GET /films/search, длина запроса: {}, offset: {}, limit: {}",
+                query.length(), offset, limit);
+        List<Film> found = filmService.searchFilms(query, offset, limit);
+        log.debug("Ответ на запрос GET /films/search: {} записей", found.size());
+        return found;
+    }
+
+    //Выгрузка всех записей построчно (NDJSON), не собирая их в памяти
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        log.debug("Получен запрос GET /films в формате NDJSON");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(NdjsonStreaming.of(objectMapper, Film.class, filmService.publishAllFilms()));
+    }
+
     @GetMapping("/{id}") // Добавлен метод для получения фильма по ID
-    public ResponseEntity<?> getFilmById(@PathVariable @Positive Long id) {
+    public ResponseEntity<?> getFilmById(@PathVariable @Positive Long id, WebRequest request) throws IOException {
+        //Версия не изменилась - отвечаем 304 без чтения и сериализации фильма
+        String tag = filmService.getFilmTag(id);
+        if (request.checkNotModified(tag)) {
+            return null;
+        }
+        try {
+            //Для той же версии отдаем уже сериализованный фильм
+            byte[] film = responseCache.get(ResponseCache.Key.film(id), tag,
+                    () -> objectMapper.writeValueAsBytes(filmService.getFilmById(id)));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(film);
+        } catch (NotFoundException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<?> getSimilarFilms(@PathVariable @Positive Long id,
+                                             @RequestParam(defaultValue = "10") @Positive int count) {
+        log.debug("Получен запрос GET /films/{}/similar", id);
         try {
-            Film film = filmService.getFilmById(id); // предполагается, что такой метод есть в FilmService
-            return new ResponseEntity<>(film, HttpStatus.OK);
+            List<Film> similarFilms = filmService.getSimilarFilms(id, count);
+            log.debug("Похожих на фильм {}: {}", id, similarFilms.size());
+            return ResponseEntity.ok(similarFilms);
         } catch (NotFoundException e) {
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
         }
@@ -64,10 +166,10 @@ public class FilmController {
 
     @PutMapping("/{id}/like/{userId}")
     public ResponseEntity<?> addLike(@PathVariable @Positive Long id, @PathVariable @Positive Long userId) {
-        log.info("Получен запрос PUT /films/{}/like/{}", id, userId);
+        log.debug("Получен запрос PUT /films/{}/like/{}", id, userId);
         try {
             filmService.addLike(id, userId);
-            log.info("Пользователь {} поставил лайк фильму {}.", userId, id);
+            log.debug("Пользователь {} поставил лайк фильму {}.", userId, id);
             return ResponseEntity.ok().build(); // Возвращаем 200 OK
         } catch (NotFoundException e) {
             log.warn("Фильм или пользователь не найден: {}", e.getMessage());
@@ -77,10 +179,10 @@ public class FilmController {
 
     @DeleteMapping("/{id}/like/{userId}")
     public ResponseEntity<?> deleteLike(@PathVariable @Positive Long id, @PathVariable @Positive Long userId) {
-        log.info("Получен запрос DELETE /films/{}/like/{}", id, userId);
+        log.debug("Получен запрос DELETE /films/{}/like/{}", id, userId);
         try {
             filmService.removeLike(id, userId);//изменил
-            log.info("Пользователь {} удалил лайк у фильма {}.", userId, id);
+            log.debug("Пользователь {} удалил лайк у фильма {}.", userId, id);
             return ResponseEntity.ok().build(); // Возвращаем 200 OK
         } catch (NotFoundException e) {
             log.warn("Фильм или пользователь не найден: {}", e.getMessage());
@@ -88,24 +190,80 @@ public class FilmController {
         }
     }
 
+    //Пакетная постановка лайков: результат по каждой паре в том же порядке
+    @PutMapping("/likes")
+    public ResponseEntity<?> addLikes(@RequestBody List<FilmLike> likes) {
+        log.debug("Получен запрос PUT /films/likes: {} пар", likes.size());
+        if (likes.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Не больше " + MAX_BATCH_SIZE + " пар за запрос"));
+        }
+        return ResponseEntity.ok(filmService.addLikes(likes));
+    }
 
+    //Без window - по всем лайкам, с window (1h, 24h, 7d) - по лайкам за скользящее окно
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") Integer count) {
-        log.info("Получен запрос GET /films/popular с параметром count: {}", count);
-        List<Film> popularFilms = filmService.getPopularFilms(count);
-        log.info("Список популярных фильмов: {}", popularFilms);
-        return popularFilms;
+    public ResponseEntity<?> getPopularFilms(@RequestParam(defaultValue = "10") Integer count,
+                                             @RequestParam(required = false) String window,
+                                             WebRequest request) throws IOException {
+        log.debug("Получен запрос GET /films/popular с параметрами count: {}, window: {}", count, window);
+        Duration duration = null;
+        if (window != null) {
+            try {
+                duration = DurationStyle.detectAndParse(window);
+            } catch (IllegalArgumentException e) {
+                duration = null;
+            }
+            if (duration == null || !filmService.supportsTrendingWindow(duration)) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Неподдерживаемое окно: " + window));
+            }
+        }
+        String tag = filmService.getPopularTag();
+        if (request.checkNotModified(tag)) {
+            return null;
+        }
+        Duration trendingWindow = duration;
+        byte[] popularFilms = responseCache.get(ResponseCache.Key.popular(count, window), tag, () -> {
+            List<Film> films = trendingWindow == null
+                    ? filmService.getPopularFilms(count)
+                    : filmService.getTrendingFilms(trendingWindow, count);
+            log.debug("Ответ на запрос GET /films/popular: {} записей", films.size());
+            return objectMapper.writeValueAsBytes(films);
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(popularFilms);
     }
 
-    @ExceptionHandler(NotFoundException.class)
-    public ResponseEntity<Map<String, String>> handleFilmNotFoundException(NotFoundException e) {
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+    //Популярное построчно (NDJSON) для больших count: фильмы читаются из рейтинга по мере отправки клиенту
+    @GetMapping(value = "/popular", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPopularFilms(
+            @RequestParam(defaultValue = "10") @Positive int count,
+            @RequestParam(required = false) String window) {
+        log.debug("Получен запрос GET /films/popular в формате NDJSON с параметром count: {}", count);
+        if (window != null) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(NdjsonStreaming.error(objectMapper,
+                            "Построчная выдача популярного - только по всем лайкам, без window"));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(NdjsonStreaming.of(objectMapper, Film.class, filmService.publishPopularFilms(count)));
     }
 
-    @ExceptionHandler(ru.yandex.practicum.filmorate.exception.NotFoundException.class)
-    public ResponseEntity<Map<String, String>> handleUserNotFoundException(ru.yandex.practicum.filmorate.exception.NotFoundException e) {
+    //Один обработчик на класс исключения: два для одного класса Spring считает неоднозначными
+    //и на любое исключение в контроллере отвечает 500
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFoundException(NotFoundException e) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
     }
+    //Журнал перестал писаться: хранилище только для чтения
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleStorageUnavailableException(StorageUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+    }
 }
 
 
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.controller;
+
+// Приблизительные частоты обращений к ключам (count-min-скетч, 4 строки 4-битных счетчиков).
+// Оценка частоты - минимум по строкам, поэтому коллизии ее только завышают.
+// Через каждые sampleSize обращений все счетчики делятся пополам: старая популярность
+// постепенно забывается. Не потокобезопасен - вызывается под блокировкой кэша.
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L, 0x94D049BB133111EBL,
+            0xD6E8FEB86659FD93L};
+
+    //Счетчики строки r для столбца c - в байте r * width + c
+    private final byte[] counts;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        //По 4 столбца на запись: при меньшей ширине разовые ключи из-за коллизий
+        //выглядят не реже действительно частых
+        int width = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+        counts = new byte[DEPTH * width];
+        mask = width - 1;
+        sampleSize = 10 * Math.max(capacity, 16);
+    }
+
+    void increment(Object key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int slot = slot(row, hash);
+            if (counts[slot] < MAX_COUNT) {
+                counts[slot]++;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counts[slot(row, hash)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] >>= 1;
+        }
+        additions /= 2;
+    }
+
+    private int slot(int row, int hash) {
+        long h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return row * (mask + 1) + ((int) (h ^ (h >>> 32)) & mask);
+    }
+}
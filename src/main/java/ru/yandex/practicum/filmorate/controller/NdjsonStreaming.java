@@ -0,0 +1,176 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Выдача коллекции в формате NDJSON: каждая сущность сериализуется и пишется в ответ сразу,
+// весь список в памяти не собирается. Записи запрашиваются у издателя порциями по FLUSH_EVERY:
+// следующая порция запрашивается, только когда предыдущая записана и отправлена, так что
+// медленный клиент сдерживает чтение из хранилища, а не копит записи в памяти сервера.
+// Все записи ответа пишутся одним генератором JSON, а не новым на каждую запись
+final class NdjsonStreaming {
+
+    private static final int FLUSH_EVERY = 256;
+
+    private NdjsonStreaming() {
+    }
+
+    static <T> StreamingResponseBody of(ObjectMapper objectMapper, Class<T> type, Flow.Publisher<T> items) {
+        ObjectWriter writer = objectMapper.writerFor(type)
+                .withRootValueSeparator("\n")
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            WritingSubscriber<T> subscriber;
+            try (SequenceWriter values = writer.writeValues(out)) {
+                subscriber = new WritingSubscriber<>(values);
+                items.subscribe(subscriber);
+                subscriber.writeAll();
+            }
+            //Разделитель пишется между записями, строка последней завершается отдельно
+            if (subscriber.written > 0) {
+                out.write('\n');
+            }
+            out.flush();
+        };
+    }
+
+    // Тело ошибки {"error": ...} для обработчиков, объявивших потоковый ответ
+    static StreamingResponseBody error(ObjectMapper objectMapper, String message) {
+        return out -> objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(out, Map.of("error", message));
+    }
+
+    private static final class WritingSubscriber<T> implements Flow.Subscriber<T> {
+
+        private final SequenceWriter values;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition progress = lock.newCondition();
+        private Flow.Subscription subscription;
+        private long pending;
+        private boolean done;
+        private Throwable failure;
+        private long written;
+
+        private WritingSubscriber(SequenceWriter values) {
+            this.values = values;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            lock.lock();
+            try {
+                this.subscription = subscription;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            try {
+                values.write(item);
+                written++;
+            } catch (IOException e) {
+                //Клиент отключился - дальше не читаем
+                subscription.cancel();
+                finish(e);
+                return;
+            }
+            lock.lock();
+            try {
+                pending--;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(null);
+        }
+
+        // Цикл потока ответа: запросить порцию, дождаться ее записи, отправить клиенту.
+        // Издатели хранилищ выдают порцию прямо в request, ожидание нужно для асинхронных
+        void writeAll() throws IOException {
+            while (true) {
+                Flow.Subscription current;
+                lock.lock();
+                try {
+                    while (subscription == null && !done) {
+                        await();
+                    }
+                    if (done) {
+                        break;
+                    }
+                    pending = FLUSH_EVERY;
+                    current = subscription;
+                } finally {
+                    lock.unlock();
+                }
+                current.request(FLUSH_EVERY);
+                lock.lock();
+                try {
+                    while (pending > 0 && !done) {
+                        await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                values.flush();
+            }
+            if (failure instanceof IOException e) {
+                throw e;
+            }
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+            if (failure != null) {
+                throw new IOException("Ошибка при чтении записей", failure);
+            }
+        }
+
+        private void finish(Throwable throwable) {
+            lock.lock();
+            try {
+                if (!done) {
+                    done = true;
+                    failure = throwable;
+                }
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                progress.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+                throw new InterruptedIOException("Выдача прервана");
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.yandex.practicum.filmorate.persistence.ReplicaFollower;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Реплика только читает: запросы на запись перенаправляются ведущему через 307, который
+// сохраняет метод и тело, поэтому клиент может слать реплике все запросы подряд.
+// Ответы реплики несут отставание от ведущего в заголовке X-Replica-Lag (изменений).
+// Пока реплика загружает снимок ведущего, ее данные неполны: чтения получают 503 с Retry-After,
+// кроме /actuator, по которому за загрузкой и следят.
+@Component
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "follower")
+@Slf4j
+public class ReplicaWriteFilter extends OncePerRequestFilter {
+
+    private static final String LOADING_BODY = "{\"error\":\"Реплика загружает снимок ведущего\"}";
+
+    private final String leaderUrl;
+    private final ReplicaFollower follower;
+
+    public ReplicaWriteFilter(@Value("${filmorate.replication.leader-url:http://localhost:8080}") String leaderUrl,
+                              ReplicaFollower follower) {
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+        this.follower = follower;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String method = request.getMethod();
+        if (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")) {
+            if (follower.isLoading() && !request.getRequestURI().startsWith("/actuator")) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+                response.getWriter().write(LOADING_BODY);
+                return;
+            }
+            response.setHeader("X-Replica-Lag", Long.toString(follower.lagChanges()));
+            chain.doFilter(request, response);
+            return;
+        }
+        String query = request.getQueryString();
+        String location = leaderUrl + request.getRequestURI() + (query == null ? "" : "?" + query);
+        log.debug("Запрос {} {} перенаправлен ведущему", method, request.getRequestURI());
+        response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+        response.setHeader(HttpHeaders.LOCATION, location);
+    }
+}
@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Кэш готовых JSON-ответов горячих чтений: фильм, пользователь, популярное.
+// Запись хранит версию данных (ETag из EntityVersions) и отдается, только пока версия совпадает:
+// изменение фильма или пользователя и лайк меняют версию, и старые байты больше не используются.
+// Вытеснение - W-TinyLFU: новая запись попадает в маленькое LRU-окно, а вытесненная из окна
+// переходит в основную часть, только если по скетчу частот встречалась чаще кандидата
+// на вытеснение оттуда. Основная часть - сегментированный LRU: повторно прочитанная запись
+// переходит из испытательного сегмента в защищенный.
+// Чтение идет без блокировки; частоты и порядок LRU обновляются под tryLock, а при конкуренции
+// обновление пропускается - потеря части обращений почти не влияет на вытеснение.
+@Component
+public class ResponseCache {
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+    private final int maxEntrySize;
+    private final Map<Key, Node> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    //Сегменты в порядке доступа: первым идет давно не читавшийся ключ
+    private final LinkedHashMap<Key, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Node> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    //Без реестра (тесты) метрики уходят в глобальный реестр
+    public ResponseCache(int maxEntries) {
+        this(Metrics.globalRegistry, maxEntries, 64 * 1024);
+    }
+
+    @Autowired
+    public ResponseCache(MeterRegistry registry,
+                         @Value("${filmorate.response-cache.max-entries:10000}") int maxEntries,
+                         @Value("${filmorate.response-cache.max-entry-size:65536}") int maxEntrySize) {
+        this.windowCapacity = Math.max(1, maxEntries / 100);
+        this.mainCapacity = Math.max(1, maxEntries - windowCapacity);
+        this.protectedCapacity = mainCapacity * 4 / 5;
+        this.maxEntrySize = maxEntrySize;
+        this.sketch = new FrequencySketch(maxEntries);
+        hits = Counter.builder("filmorate.response.cache")
+                .tag("result", "hit")
+                .register(registry);
+        misses = Counter.builder("filmorate.response.cache")
+                .tag("result", "miss")
+                .register(registry);
+        evictions = Counter.builder("filmorate.response.cache.evictions")
+                .register(registry);
+        Gauge.builder("filmorate.response.cache.size", entries, Map::size)
+                .register(registry);
+        Gauge.builder("filmorate.response.cache.hit.ratio", this, ResponseCache::hitRatio)
+                .register(registry);
+    }
+
+    // Готовый ответ для версии version или результат loader, который кэшируется
+    public byte[] get(Key key, String version, Loader loader) throws IOException {
+        Node node = entries.get(key);
+        if (node != null && node.version.equals(version)) {
+            hits.increment();
+            if (policyLock.tryLock()) {
+                try {
+                    onAccess(key);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return node.body;
+        }
+        misses.increment();
+        byte[] body = loader.load();
+        if (body.length <= maxEntrySize) {
+            put(key, new Node(version, body));
+        }
+        return body;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private void put(Key key, Node node) {
+        policyLock.lock();
+        try {
+            sketch.increment(key);
+            //Новая версия занимает место старой в том же сегменте
+            if (entries.put(key, node) != null) {
+                for (LinkedHashMap<Key, Node> segment : List.of(window, probation, protectedSegment)) {
+                    if (segment.replace(key, node) != null) {
+                        return;
+                    }
+                }
+            }
+            window.put(key, node);
+            if (window.size() > windowCapacity) {
+                Map.Entry<Key, Node> candidate = removeEldest(window);
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    //Запись могли вытеснить или заменить после чтения - работаем с тем, что лежит в сегменте
+    private void onAccess(Key key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedSegment.get(key) != null) {
+            return;
+        }
+        Node node = probation.remove(key);
+        if (node != null) {
+            protectedSegment.put(key, node);
+            if (protectedSegment.size() > protectedCapacity) {
+                Map.Entry<Key, Node> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+    }
+
+    //Запись из окна остается, только если она популярнее той, которую пришлось бы вытеснить
+    private void admit(Key candidate, Node node) {
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(candidate, node);
+            return;
+        }
+        LinkedHashMap<Key, Node> victims = probation.isEmpty() ? protectedSegment : probation;
+        Key victim = victims.keySet().iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            evict(victim);
+            probation.put(candidate, node);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    private void evict(Key key) {
+        entries.remove(key);
+        evictions.increment();
+    }
+
+    private static Map.Entry<Key, Node> removeEldest(LinkedHashMap<Key, Node> segment) {
+        Iterator<Map.Entry<Key, Node>> iterator = segment.entrySet().iterator();
+        Map.Entry<Key, Node> eldest = iterator.next();
+        Map.Entry<Key, Node> removed = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return removed;
+    }
+
+    // Сериализация ответа при промахе
+    @FunctionalInterface
+    public interface Loader {
+        byte[] load() throws IOException;
+    }
+
+    // Что закэшировано: вид ответа, id записи и параметры запроса (для списков)
+    public record Key(String kind, long id, String variant) {
+
+        public static Key film(long filmId) {
+            return new Key("film", filmId, "");
+        }
+
+        public static Key user(long userId) {
+            return new Key("user", userId, "");
+        }
+
+        public static Key popular(int count, String window) {
+            return new Key("popular", count, window == null ? "" : window);
+        }
+    }
+
+    private record Node(String version, byte[] body) {
+    }
+}
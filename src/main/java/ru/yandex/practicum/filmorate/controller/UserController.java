@@ -1,59 +1,126 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.StorageUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendRecommendation;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportResult;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Flow;
 
 @RestController
 @RequestMapping("/users")
 @Slf4j
+@Validated
 public class UserController {
 
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final ResponseCache responseCache;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, ObjectMapper objectMapper,
+                          ResponseCache responseCache) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
     }
 
     @PostMapping
     public ResponseEntity<?> createUser(@RequestBody User user) {
-        log.info("Получен запрос POST /users с телом: {}", user);
+        log.debug("Получен запрос POST /users с телом: {}", user);
         ResponseEntity<?> response = userService.createUser(user);
-        log.info("Ответ на запрос POST /users: {}", response);
+        log.debug("Ответ на запрос POST /users: статус {}", response.getStatusCode());
         return response;
     }
 
+    //Потоковая загрузка: по одной записи User в строке (NDJSON), тело целиком в память не читается
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportResult importUsers(InputStream body) throws IOException {
+        log.debug("Получен запрос POST /users в формате NDJSON");
+        try (MappingIterator<User> items = objectMapper.readerFor(User.class).readValues(body)) {
+            return userService.importUsers(items);
+        }
+    }
+
     @PutMapping
     public ResponseEntity<?> updateUser(@RequestBody User user) {
-        log.info("Получен запрос PUT /users с телом: {}", user);
+        log.debug("Получен запрос PUT /users с телом: {}", user);
         ResponseEntity<?> response = userService.updateUser(user);
-        log.info("Ответ на запрос PUT /users: {}", response);
+        log.debug("Ответ на запрос PUT /users: статус {}", response.getStatusCode());
         return response;
     }
 
+    //Без параметров отдаем весь список, с after/limit - страницу по возрастанию id
     @GetMapping
+    public ResponseEntity<List<User>> getUsers(@RequestParam(required = false) Long after,
+                                              @RequestParam(required = false) @Positive Integer limit) {
+        if (after == null && limit == null) {
+            return getAllUsers();
+        }
+        log.debug("Получен запрос GET /users с параметрами after: {}, limit: {}", after, limit);
+        List<User> page = userService.getUsers(after, limit == null ? Integer.MAX_VALUE : limit);
+        log.debug("Ответ на запрос GET /users: {} записей", page.size());
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
     public ResponseEntity<List<User>> getAllUsers() {
-        log.info("Получен запрос GET /users");
+        log.debug("Получен запрос GET /users");
         ResponseEntity<List<User>> response = userService.getAllUsers();
-        log.info("Ответ на запрос GET /users: {}", response.getBody());
+        log.debug("Ответ на запрос GET /users: {} записей", response.getBody() == null ? 0 : response.getBody().size());
         return response;
     }
 
+    //Поиск с автодополнением последнего слова, выдача постранично: offset - сколько пропустить
+    @GetMapping("/search")
+    public List<User> searchUsers(@RequestParam String query,
+                                  @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+                                  @RequestParam(defaultValue = "20") @Positive int limit) {
+        log.debug("Получен запрос GET /users/search, длина запроса: {}, offset: {}, limit: {}",
+                query.length(), offset, limit);
+        List<User> found = userService.searchUsers(query, offset, limit);
+        log.debug("Ответ на запрос GET /users/search: {} записей", found.size());
+        return found;
+    }
+
+    //Выгрузка всех записей построчно (NDJSON), не собирая их в памяти
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        log.debug("Получен запрос GET /users в формате NDJSON");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(NdjsonStreaming.of(objectMapper, User.class, userService.publishAllUsers()));
+    }
+
     @PutMapping("/{id}/friends/{friendId}")
     public ResponseEntity<?> addFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        log.info("Получен запрос PUT /users/{}/friends/{}", id, friendId);
+        log.debug("Получен запрос PUT /users/{}/friends/{}", id, friendId);
         try {
             userService.addFriend(id, friendId);
-            log.info("Пользователи {} и {} добавлены в друзья.", id, friendId);
+            log.debug("Пользователи {} и {} добавлены в друзья.", id, friendId);
             return ResponseEntity.status(HttpStatus.OK).build();
         } catch (NotFoundException e) {
             log.warn("Пользователь с id {} или {} не найден.", id, friendId);
@@ -61,12 +128,23 @@ public class UserController {
         }
     }
 
+    //Пакетное добавление в друзья: результат по каждой паре в том же порядке
+    @PutMapping("/friends")
+    public ResponseEntity<?> addFriends(@RequestBody List<Friendship> friendships) {
+        log.debug("Получен запрос PUT /users/friends: {} пар", friendships.size());
+        if (friendships.size() > FilmController.MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Не больше " + FilmController.MAX_BATCH_SIZE + " пар за запрос"));
+        }
+        return ResponseEntity.ok(userService.addFriends(friendships));
+    }
+
     @DeleteMapping("/{id}/friends/{friendId}")
     public ResponseEntity<?> deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        log.info("Получен запрос DELETE /users/{}/friends/{}", id, friendId);
+        log.debug("Получен запрос DELETE /users/{}/friends/{}", id, friendId);
         try {
             userService.removeFriend(id, friendId);
-            log.info("Пользователи {} и {} удалены из друзей.", id, friendId);
+            log.debug("Пользователи {} и {} удалены из друзей.", id, friendId);
             return ResponseEntity.status(HttpStatus.OK).build();
         } catch (NotFoundException e) {
             log.warn("Пользователь с id {} или {} не найден.", id, friendId);
@@ -75,11 +153,14 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public ResponseEntity<?> getFriends(@PathVariable Long id) {
-        log.info("Получен запрос GET /users/{}/friends", id);
+    public ResponseEntity<?> getFriends(@PathVariable Long id, WebRequest request) {
+        log.debug("Получен запрос GET /users/{}/friends", id);
+        if (request.checkNotModified(userService.getFriendsTag(id))) {
+            return null;
+        }
         try {
             List<User> friends = userService.getFriends(id);
-            log.info("Список друзей пользователя {}: {}", id, friends);
+            log.debug("У пользователя {} друзей: {}", id, friends.size());
             return new ResponseEntity<>(friends, HttpStatus.OK);
         } catch (NotFoundException e) {
             log.warn("Пользователь с id {} не найден.", id);
@@ -87,24 +168,102 @@ public class UserController {
         }
     }
 
+    //Друзья построчно (NDJSON): записи читаются по мере отправки клиенту, а не собираются в список
+    @GetMapping(value = "/{id}/friends", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFriends(@PathVariable Long id) {
+        log.debug("Получен запрос GET /users/{}/friends в формате NDJSON", id);
+        try {
+            Flow.Publisher<User> friends = userService.publishFriends(id);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(NdjsonStreaming.of(objectMapper, User.class, friends));
+        } catch (NotFoundException e) {
+            log.warn("Пользователь с id {} не найден.", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(NdjsonStreaming.error(objectMapper, e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
-    public List<User> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
-        log.info("Получен запрос GET /users/{}/friends/common/{}", id, otherId);
-        List<User> commonFriends = userService.getCommonFriends(id, otherId);
-        log.info("Общие друзья пользователей {} и {}: {}", id, otherId, commonFriends);
+    public List<User> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId,
+                                       @RequestParam(required = false) Long after,
+                                       @RequestParam(required = false) @Positive Integer limit) {
+        log.debug("Получен запрос GET /users/{}/friends/common/{}", id, otherId);
+        List<User> commonFriends = userService.getCommonFriends(id, otherId, after,
+                limit == null ? Integer.MAX_VALUE : limit);
+        log.debug("Общих друзей у пользователей {} и {}: {}", id, otherId, commonFriends.size());
         return commonFriends;
     }
 
+    @GetMapping("/{id}/recommendations")
+    public ResponseEntity<?> getRecommendations(@PathVariable Long id,
+                                                @RequestParam(defaultValue = "10") @Positive int limit) {
+        log.debug("Получен запрос GET /users/{}/recommendations", id);
+        try {
+            List<FriendRecommendation> recommendations = userService.getRecommendations(id, limit);
+            log.debug("Рекомендаций для пользователя {}: {}", id, recommendations.size());
+            return ResponseEntity.ok(recommendations);
+        } catch (NotFoundException e) {
+            log.warn("Пользователь с id {} не найден.", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}/likes")
+    public ResponseEntity<?> getLikedFilms(@PathVariable Long id,
+                                           @RequestParam(required = false) Long after,
+                                           @RequestParam(required = false) @Positive Integer limit) {
+        log.debug("Получен запрос GET /users/{}/likes с параметрами after: {}, limit: {}", id, after, limit);
+        try {
+            List<Film> films = filmService.getLikedFilms(id, after, limit == null ? Integer.MAX_VALUE : limit);
+            log.debug("Ответ на запрос GET /users/{}/likes: {} записей", id, films.size());
+            return ResponseEntity.ok(films);
+        } catch (NotFoundException e) {
+            log.warn("Пользователь с id {} не найден.", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}/film-recommendations")
+    public ResponseEntity<?> getFilmRecommendations(@PathVariable Long id,
+                                                    @RequestParam(defaultValue = "10") @Positive int count) {
+        log.debug("Получен запрос GET /users/{}/film-recommendations", id);
+        try {
+            List<Film> films = filmService.getRecommendedFilms(id, count);
+            log.debug("Рекомендовано фильмов пользователю {}: {}", id, films.size());
+            return ResponseEntity.ok(films);
+        } catch (NotFoundException e) {
+            log.warn("Пользователь с id {} не найден.", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<?> getUserById(@PathVariable Long id) {
+    public ResponseEntity<?> getUserById(@PathVariable Long id, WebRequest request) throws IOException {
+        //Версия не изменилась - отвечаем 304 без чтения и сериализации пользователя
+        String tag = userService.getUserTag(id);
+        if (request.checkNotModified(tag)) {
+            return null;
+        }
         try {
-            User user = userService.getUserById(id);
-            return new ResponseEntity<>(user, HttpStatus.OK);
+            //Для той же версии отдаем уже сериализованного пользователя
+            byte[] user = responseCache.get(ResponseCache.Key.user(id), tag,
+                    () -> objectMapper.writeValueAsBytes(userService.getUserById(id)));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(user);
         } catch (NotFoundException e) {
             log.warn("Пользователь с id {} не найден.", id);
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage())); // Возвращаем 404 с телом
         }
     }
+
+    //Журнал перестал писаться: хранилище только для чтения
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleStorageUnavailableException(StorageUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+    }
 }
 
 
@@ -1,7 +1,8 @@
 package ru.yandex.practicum.filmorate.exception;
 
+// Как и ValidationException - ответ на запрос к несуществующему id, стек вызовов не собирается
 public class NotFoundException extends RuntimeException {
     public NotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
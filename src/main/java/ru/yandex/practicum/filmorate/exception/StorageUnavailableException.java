@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exception;
+
+// Хранилище сейчас не принимает изменений (например, журнал на диске перестал писаться).
+// Отказ приходит до изменения данных, поэтому клиенту отвечаем 503, а не 500
+public class StorageUnavailableException extends RuntimeException {
+    public StorageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.exception;
 
+// Ошибка в данных клиента, а не в коде: стек вызовов не собирается, он ничего не объясняет
+// и был бы самой дорогой частью отказа
 public class ValidationException extends RuntimeException {
     public ValidationException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+// Результат одного элемента пакетной операции
+public enum BatchStatus {
+    // Связь добавлена
+    APPLIED,
+    // Связь уже была
+    UNCHANGED,
+    FILM_NOT_FOUND,
+    USER_NOT_FOUND,
+    // В паре не хватает id
+    INVALID
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+// Условия отбора фильмов: границы включительно, незаданная граница не ограничивает
+@Data
+@AllArgsConstructor
+public class FilmFilter {
+    LocalDate releasedFrom;
+    LocalDate releasedTo;
+    Integer minDuration;
+    Integer maxDuration;
+
+    public boolean hasReleaseRange() {
+        return releasedFrom != null || releasedTo != null;
+    }
+
+    public boolean hasDurationRange() {
+        return minDuration != null || maxDuration != null;
+    }
+
+    public boolean matches(Film film) {
+        if (hasReleaseRange() && (film.getReleaseDate() == null
+                || releasedFrom != null && film.getReleaseDate().isBefore(releasedFrom)
+                || releasedTo != null && film.getReleaseDate().isAfter(releasedTo))) {
+            return false;
+        }
+        return !hasDurationRange() || film.getDuration() != null
+                && (minDuration == null || film.getDuration() >= minDuration)
+                && (maxDuration == null || film.getDuration() <= maxDuration);
+    }
+}
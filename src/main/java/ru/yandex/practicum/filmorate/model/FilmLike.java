@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Пара "фильм - пользователь" для пакетной постановки лайков
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLike {
+    Long filmId;
+    Long userId;
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Рекомендуемый пользователь и число общих с ним друзей
+@Data
+@AllArgsConstructor
+public class FriendRecommendation {
+    User user;
+    int mutualFriends;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Пара пользователей для пакетного добавления в друзья
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Friendship {
+    Long userId;
+    Long friendId;
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Итог потоковой загрузки: сколько записей создано и отклонено, первые ошибки с номерами строк
+@Data
+@AllArgsConstructor
+public class ImportResult {
+    long created;
+    long failed;
+    List<ImportError> errors;
+
+    @Data
+    @AllArgsConstructor
+    public static class ImportError {
+        long line;
+        String error;
+    }
+}
@@ -0,0 +1,290 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.StorageListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Поток изменений для реплик (ведущий узел). Каждое изменение хранилищ получает номер и кладется
+// в кольцевой буфер последних backlog изменений в кодировке журнала. Реплики подключаются по TCP
+// и читают буфер каждая своим курсором, поэтому медленная реплика не задерживает ни запись,
+// ни другие реплики. Реплика, подключившаяся впервые или отставшая больше чем на буфер, получает
+// снимок хранилищ и продолжает с номера, на котором он был снят: изменения идемпотентны, так что
+// снимок, снятый без остановки записи, безопасно дополнять потоком (как снимок и журнал на диске).
+// Отправитель, дождавшийся нового изменения, выжидает еще миллисекунду и отправляет все
+// накопившееся одной пачкой. После каждой пачки и раз в секунду простоя реплике уходит heartbeat с последним номером -
+// по нему она считает отставание.
+// Формат сообщений: CHANGE [номер][время изменения, мс][длина][запись],
+// HEARTBEAT [номер][время, мс], SNAPSHOT [эпоха][номер][длина][файл снимка].
+@Component
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "leader")
+@Slf4j
+public class ChangeStreamPublisher implements StorageListener {
+
+    static final byte CHANGE = 1;
+    static final byte HEARTBEAT = 2;
+    static final byte SNAPSHOT = 3;
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final int MAX_BATCH = 1024;
+    private static final long LINGER_MICROS = 1000;
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final InetAddress bindAddress;
+    private final int port;
+    private final Change[] backlog;
+    //Номер запуска: после перезапуска ведущего номера изменений начинаются заново
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final Counter snapshotsSent;
+    private long lastSequence;
+    private ServerSocket server;
+    private volatile boolean running = true;
+
+    public ChangeStreamPublisher(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage,
+                                 MeterRegistry registry,
+                                 @Value("${filmorate.replication.bind-address:127.0.0.1}") InetAddress bindAddress,
+                                 @Value("${filmorate.replication.port:7070}") int port,
+                                 @Value("${filmorate.replication.backlog:65536}") int backlog) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.backlog = new Change[backlog];
+        snapshotsSent = Counter.builder("filmorate.replication.snapshots")
+                .tag("direction", "sent")
+                .register(registry);
+        Gauge.builder("filmorate.replication.followers", followers, Set::size)
+                .register(registry);
+        Gauge.builder("filmorate.replication.sequence", this, ChangeStreamPublisher::lastSequence)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        server = new ServerSocket(port, 50, bindAddress);
+        filmStorage.addListener(this);
+        userStorage.addListener(this);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Поток изменений для реплик слушает {}:{}", bindAddress.getHostAddress(), port());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        server.close();
+        for (Socket follower : followers) {
+            follower.close();
+        }
+    }
+
+    // Фактический порт (при port=0 его выбирает система)
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void filmSaved(Film film) {
+        publish(JournalCodec.film(film));
+    }
+
+    @Override
+    public void likeAdded(long filmId, long userId) {
+        publish(JournalCodec.edge(JournalCodec.LIKE_ADDED, filmId, userId));
+    }
+
+    @Override
+    public void likeRemoved(long filmId, long userId) {
+        publish(JournalCodec.edge(JournalCodec.LIKE_REMOVED, filmId, userId));
+    }
+
+    @Override
+    public void userSaved(User user) {
+        publish(JournalCodec.user(user));
+    }
+
+    @Override
+    public void friendAdded(long userId, long friendId) {
+        publish(JournalCodec.edge(JournalCodec.FRIEND_ADDED, userId, friendId));
+    }
+
+    @Override
+    public void friendRemoved(long userId, long friendId) {
+        publish(JournalCodec.edge(JournalCodec.FRIEND_REMOVED, userId, friendId));
+    }
+
+    //Запись закодирована до блокировки: под ней только номер и слот буфера
+    private void publish(byte[] record) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            lastSequence++;
+            backlog[slot(lastSequence)] = new Change(lastSequence, now, record);
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Ошибка приема подключения реплики: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            long followerEpoch = in.readLong();
+            long followerSequence = in.readLong();
+            log.info("Подключилась реплика {}, применено изменений: {}", socket.getRemoteSocketAddress(),
+                    followerSequence);
+            //Номера другого запуска ведущего ничего не значат - нужен снимок
+            long next = followerEpoch == epoch ? followerSequence + 1 : -1;
+            List<Change> batch = new ArrayList<>(MAX_BATCH);
+            while (running) {
+                long seen = collect(next, batch);
+                if (seen < 0) {
+                    next = sendSnapshot(out, socket) + 1;
+                    continue;
+                }
+                for (Change change : batch) {
+                    out.writeByte(CHANGE);
+                    out.writeLong(change.sequence());
+                    out.writeLong(change.time());
+                    out.writeInt(change.record().length);
+                    out.write(change.record());
+                }
+                out.writeByte(HEARTBEAT);
+                out.writeLong(seen);
+                out.writeLong(System.currentTimeMillis());
+                out.flush();
+                if (!batch.isEmpty()) {
+                    next = batch.get(batch.size() - 1).sequence() + 1;
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.info("Реплика {} отключилась: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    // Изменения начиная с next (ждет до секунды, если их нет); возвращает последний номер
+    // или -1, если next уже вытеснен из буфера
+    private long collect(long next, List<Change> batch) throws InterruptedException {
+        boolean woken = false;
+        lock.lock();
+        try {
+            if (next == lastSequence + 1) {
+                woken = appended.await(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (woken) {
+            //Задержка отправки: за нее накапливается пачка, и поток записи не будит отправителя
+            //и не платит за отдельную отправку на каждое изменение (отправитель здесь не ждет условия)
+            TimeUnit.MICROSECONDS.sleep(LINGER_MICROS);
+        }
+        lock.lock();
+        try {
+            long oldest = Math.max(1, lastSequence - backlog.length + 1);
+            if (next < oldest || next > lastSequence + 1) {
+                return -1;
+            }
+            for (long sequence = next; sequence <= lastSequence && batch.size() < MAX_BATCH; sequence++) {
+                batch.add(backlog[slot(sequence)]);
+            }
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long sendSnapshot(DataOutputStream out, Socket socket) throws IOException {
+        //Номер берется до снимка: все изменения до него в снимок уже попали
+        long from = lastSequence();
+        Path file = Files.createTempFile("filmorate-replica-", ".bin");
+        try {
+            long written = SnapshotFile.write(file, filmStorage, userStorage);
+            long size = Files.size(file);
+            out.writeByte(SNAPSHOT);
+            out.writeLong(epoch);
+            out.writeLong(from);
+            out.writeLong(size);
+            Files.copy(file, out);
+            out.flush();
+            snapshotsSent.increment();
+            log.info("Реплике {} отправлен снимок на изменении {}: {} записей, {} байт",
+                    socket.getRemoteSocketAddress(), from, written, size);
+            return from;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % backlog.length);
+    }
+
+    private record Change(long sequence, long time, byte[] record) {
+    }
+}
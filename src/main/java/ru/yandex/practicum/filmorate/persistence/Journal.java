@@ -0,0 +1,374 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.StorageUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StorageListener;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Журнал изменений (write-ahead log) на FileChannel с групповой фиксацией:
+// хранилища под блокировкой записи только кладут закодированные записи в очередь, а отдельный
+// поток пишет накопившуюся пачку одним write и делает один fsync на всю пачку. Ответ клиенту
+// ждет этого fsync в writeCompleted, уже после снятия блокировок хранилища.
+// После ошибки записи журнал закрывается для записи: ждущие изменения получают отказ,
+// а следующие отклоняются в ensureWritable еще до изменения хранилищ - приложение
+// остается доступным только для чтения, а не показывает изменения, которых нет на диске.
+// Формат записи: [длина][crc32][данные]. Журнал делится на сегменты; при снимке
+// открывается новый сегмент, и старые после записи снимка можно удалить.
+@Slf4j
+class Journal implements StorageListener, AutoCloseable {
+
+    private static final Object STOP = new Object();
+    private static final int HEADER_BYTES = 8;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final BlockingQueue<Object> queue;
+    private final int maxBatch;
+    private final Thread writer;
+    private final AtomicLong records = new AtomicLong();
+    //Номер записи выдается вместе с местом в очереди, поэтому записанный префикс очереди -
+    //это ровно записи с номерами до durable
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    //Номер последней записи, поставленной в очередь текущим потоком и еще не дождавшейся fsync
+    private final ThreadLocal<long[]> pending = ThreadLocal.withInitial(() -> new long[1]);
+    private long enqueued;
+    private volatile long durable;
+    private volatile IOException failure;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long segment;
+
+    Journal(Path directory, long firstSegment, int queueCapacity, int maxBatch) throws IOException {
+        this.directory = directory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.segment = firstSegment;
+        this.channel = open(firstSegment);
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("journal-%020d.log", segment));
+    }
+
+    // Применяет записи сегмента к target; останавливается на первой оборванной или битой записи
+    static long replay(Path file, StorageListener target) throws IOException {
+        long applied = 0;
+        CRC32 checksum = new CRC32();
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             DataInputStream in = new DataInputStream(stream)) {
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    int expectedCrc = in.readInt();
+                    record = new byte[length];
+                    in.readFully(record);
+                    checksum.reset();
+                    checksum.update(record);
+                    if ((int) checksum.getValue() != expectedCrc) {
+                        log.warn("Битая запись в {} после {} записей, остаток сегмента пропущен", file, applied);
+                        return applied;
+                    }
+                } catch (EOFException e) {
+                    return applied;
+                }
+                JournalCodec.decode(record, target);
+                applied++;
+            }
+        }
+    }
+
+    long segment() {
+        return segment;
+    }
+
+    long recordsWritten() {
+        return records.get();
+    }
+
+    // Все записи, поставленные в очередь до вызова, остаются в текущем сегменте;
+    // возвращает номер нового сегмента
+    long rotate() throws IOException {
+        CompletableFuture<Long> rotated = new CompletableFuture<>();
+        if (failure != null) {
+            throw new IOException("Журнал закрыт после ошибки записи", failure);
+        }
+        enqueue(rotated);
+        try {
+            return rotated.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ротация журнала прервана", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Не удалось открыть новый сегмент журнала", e.getCause());
+        }
+    }
+
+    @Override
+    public void ensureWritable() {
+        IOException error = failure;
+        if (error != null) {
+            throw new StorageUnavailableException("Хранилище доступно только для чтения: журнал не пишется на диск",
+                    error);
+        }
+    }
+
+    @Override
+    public void filmSaved(Film film) {
+        append(JournalCodec.film(film));
+    }
+
+    @Override
+    public void likeAdded(long filmId, long userId) {
+        append(JournalCodec.edge(JournalCodec.LIKE_ADDED, filmId, userId));
+    }
+
+    @Override
+    public void likeRemoved(long filmId, long userId) {
+        append(JournalCodec.edge(JournalCodec.LIKE_REMOVED, filmId, userId));
+    }
+
+    @Override
+    public void userSaved(User user) {
+        append(JournalCodec.user(user));
+    }
+
+    @Override
+    public void friendAdded(long userId, long friendId) {
+        append(JournalCodec.edge(JournalCodec.FRIEND_ADDED, userId, friendId));
+    }
+
+    @Override
+    public void friendRemoved(long userId, long friendId) {
+        append(JournalCodec.edge(JournalCodec.FRIEND_REMOVED, userId, friendId));
+    }
+
+    // Операция хранилища закончена: ждем fsync пачки с последней ее записью.
+    // Пачка пакетной операции одна на все ее изменения
+    @Override
+    public void writeCompleted() {
+        long[] last = pending.get();
+        long sequence = last[0];
+        if (sequence == 0) {
+            return;
+        }
+        last[0] = 0;
+        if (durable >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (durable < sequence && failure == null) {
+                synced.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Ожидание записи журнала прервано", e));
+        } finally {
+            syncLock.unlock();
+        }
+        if (durable < sequence) {
+            throw new UncheckedIOException("Изменение не записано в журнал", failure);
+        }
+    }
+
+    // Дописывает очередь на диск и закрывает сегмент
+    @Override
+    public void close() throws InterruptedException {
+        enqueue(STOP);
+        writer.join();
+    }
+
+    private void append(byte[] record) {
+        if (failure != null) {
+            //Журнал закрылся, пока операция шла мимо ensureWritable:
+            //writeCompleted откажет в записи, не дожидаясь диска
+            pending.get()[0] = Long.MAX_VALUE;
+            return;
+        }
+        enqueueLock.lock();
+        try {
+            //Очередь ограничена: при отставании диска запись в хранилище притормаживает, а не копит память
+            queue.put(record);
+            pending.get()[0] = ++enqueued;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Запись в журнал прервана, изменение не сохранено на диск");
+            pending.get()[0] = Long.MAX_VALUE;
+        } finally {
+            enqueueLock.unlock();
+        }
+    }
+
+    private void enqueue(Object item) {
+        enqueueLock.lock();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Команда журналу прервана");
+        } finally {
+            enqueueLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>(maxBatch);
+        long written = 0;
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                for (Object item : batch) {
+                    if (item instanceof byte[] record) {
+                        if (failure == null) {
+                            write(record);
+                        }
+                        written++;
+                    } else if (item instanceof CompletableFuture<?> rotation) {
+                        switchSegment(rotation);
+                    } else if (item == STOP) {
+                        stopped = true;
+                    }
+                }
+                if (failure == null) {
+                    flush();
+                    //Групповая фиксация: один fsync на всю пачку записей
+                    channel.force(false);
+                    synced(written);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } catch (IOException e) {
+                //Хвост сегмента мог оборваться посреди записи: дописывать за ним нельзя,
+                //восстановление остановится на этом месте. Очередь дальше только разбирается,
+                //чтобы не держать вставших в put
+                log.error("Ошибка записи журнала, журнал закрыт для записи: {}", e.getMessage(), e);
+                fail(e);
+            }
+            batch.clear();
+        }
+        try {
+            if (failure == null) {
+                flush();
+                channel.force(false);
+                synced(written);
+            }
+            channel.close();
+        } catch (IOException e) {
+            log.error("Ошибка закрытия журнала: {}", e.getMessage(), e);
+            fail(e);
+        }
+    }
+
+    private void synced(long written) {
+        syncLock.lock();
+        try {
+            durable = written;
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void fail(IOException e) {
+        syncLock.lock();
+        try {
+            failure = e;
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void write(byte[] record) throws IOException {
+        if (buffer.remaining() < record.length + HEADER_BYTES) {
+            flush();
+        }
+        crc.reset();
+        crc.update(record);
+        if (record.length + HEADER_BYTES > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.allocate(record.length + HEADER_BYTES);
+            large.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+            writeFully(large);
+        } else {
+            buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        }
+        records.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void switchSegment(CompletableFuture<?> rotation) {
+        if (failure != null) {
+            rotation.completeExceptionally(failure);
+            return;
+        }
+        try {
+            flush();
+            FileChannel next = open(segment + 1);
+            channel.force(false);
+            channel.close();
+            channel = next;
+            segment++;
+            ((CompletableFuture<Long>) rotation).complete(segment);
+        } catch (IOException e) {
+            rotation.completeExceptionally(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    // Имя нового сегмента фиксируется на диске сразу: fsync записей в нем не сохраняет сам файл
+    private FileChannel open(long number) throws IOException {
+        FileChannel opened = FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        return opened;
+    }
+}
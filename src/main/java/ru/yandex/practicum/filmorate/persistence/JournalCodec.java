@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StorageListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// Двоичное представление изменений хранилищ: [тип][поля].
+// Одна и та же запись используется журналом и потоком изменений для реплик.
+final class JournalCodec {
+
+    static final byte FILM_SAVED = 1;
+    static final byte LIKE_ADDED = 2;
+    static final byte LIKE_REMOVED = 3;
+    static final byte USER_SAVED = 4;
+    static final byte FRIEND_ADDED = 5;
+    static final byte FRIEND_REMOVED = 6;
+
+    private static final int NULL_LENGTH = -1;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private JournalCodec() {
+    }
+
+    static byte[] film(Film film) {
+        return encode(out -> {
+            out.writeByte(FILM_SAVED);
+            writeFilm(out, film);
+        });
+    }
+
+    static byte[] user(User user) {
+        return encode(out -> {
+            out.writeByte(USER_SAVED);
+            writeUser(out, user);
+        });
+    }
+
+    static byte[] edge(byte type, long first, long second) {
+        byte[] record = new byte[17];
+        record[0] = type;
+        writeLong(record, 1, first);
+        writeLong(record, 9, second);
+        return record;
+    }
+
+    static void decode(byte[] record, StorageListener target) throws IOException {
+        decode(new DataInputStream(new ByteArrayInputStream(record)), target);
+    }
+
+    // Разбирает запись и передает изменение подписчику
+    static void decode(DataInput in, StorageListener target) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case FILM_SAVED -> target.filmSaved(readFilm(in));
+            case USER_SAVED -> target.userSaved(readUser(in));
+            case LIKE_ADDED -> target.likeAdded(in.readLong(), in.readLong());
+            case LIKE_REMOVED -> target.likeRemoved(in.readLong(), in.readLong());
+            case FRIEND_ADDED -> target.friendAdded(in.readLong(), in.readLong());
+            case FRIEND_REMOVED -> target.friendRemoved(in.readLong(), in.readLong());
+            default -> throw new IOException("Неизвестный тип записи журнала: " + type);
+        }
+    }
+
+    static void writeFilm(DataOutput out, Film film) throws IOException {
+        out.writeLong(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        out.writeBoolean(film.getDuration() != null);
+        if (film.getDuration() != null) {
+            out.writeInt(film.getDuration());
+        }
+    }
+
+    static Film readFilm(DataInput in) throws IOException {
+        long id = in.readLong();
+        String name = readString(in);
+        String description = readString(in);
+        LocalDate releaseDate = readDate(in);
+        Integer duration = in.readBoolean() ? in.readInt() : null;
+        return new Film(id, name, description, duration, releaseDate);
+    }
+
+    static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeLong(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getLogin());
+        writeString(out, user.getName());
+        writeDate(out, user.getBirthday());
+    }
+
+    static User readUser(DataInput in) throws IOException {
+        User user = new User();
+        user.setId(in.readLong());
+        user.setEmail(readString(in));
+        user.setLogin(readString(in));
+        user.setName(readString(in));
+        user.setBirthday(readDate(in));
+        return user;
+    }
+
+    // Строки как длина + UTF-8: writeUTF ограничен 64 КБ
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeLong(date == null ? NULL_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(DataInput in) throws IOException {
+        long epochDay = in.readLong();
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeLong(byte[] target, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+}
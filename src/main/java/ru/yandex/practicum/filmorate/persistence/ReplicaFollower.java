@@ -0,0 +1,234 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Реплика: читает поток изменений ведущего (ChangeStreamPublisher) и применяет его к локальным
+// хранилищам с уведомлением подписчиков, поэтому поиск, версии для ETag и кэш ответов реплики
+// следуют за данными. После разрыва переподключается и продолжает с последнего примененного
+// изменения; если ведущий перезапущен или реплика отстала больше чем на его буфер, приходит снимок.
+// Пока снимок загружается, хранилища реплики неполны: isLoading() сообщает об этом, и чтения
+// получают 503 (ReplicaWriteFilter), а не пустые списки и 404.
+// Отставание считается в изменениях (последний номер ведущего минус примененный) и во времени
+// (от изменения на ведущем до применения) - по часам двух процессов, поэтому рассчитано
+// на узлы одной машины или с синхронизированными часами.
+@Component
+@ConditionalOnProperty(name = "filmorate.replication.role", havingValue = "follower")
+@Slf4j
+public class ReplicaFollower {
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final StorageReplayer replayer;
+    private final String host;
+    private final int port;
+    private final Timer applyDelay;
+    private final Counter snapshotsLoaded;
+    private volatile long epoch;
+    private volatile long appliedSequence;
+    private volatile long appliedTime;
+    private volatile long leaderSequence;
+    private volatile boolean connected;
+    //До первого снимка ведущего у реплики нет данных
+    private volatile boolean loading = true;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private Thread reader;
+
+    public ReplicaFollower(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage, MeterRegistry registry,
+                           @Value("${filmorate.replication.leader:localhost:7070}") String leader) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.replayer = new StorageReplayer(filmStorage, userStorage, true);
+        int separator = leader.lastIndexOf(':');
+        this.host = leader.substring(0, separator);
+        this.port = Integer.parseInt(leader.substring(separator + 1));
+        applyDelay = Timer.builder("filmorate.replication.delay")
+                .description("Время от изменения на ведущем до применения на реплике")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        snapshotsLoaded = Counter.builder("filmorate.replication.snapshots")
+                .tag("direction", "received")
+                .register(registry);
+        Gauge.builder("filmorate.replication.lag.changes", this, ReplicaFollower::lagChanges)
+                .register(registry);
+        Gauge.builder("filmorate.replication.lag.millis", this, ReplicaFollower::lagMillis)
+                .register(registry);
+        Gauge.builder("filmorate.replication.connected", this, follower -> follower.connected ? 1 : 0)
+                .register(registry);
+        Gauge.builder("filmorate.replication.loading", this, follower -> follower.loading ? 1 : 0)
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        reader = new Thread(this::followLoop, "replica-follower");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        reader.interrupt();
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    // Идет загрузка снимка ведущего: данные реплики сейчас неполны
+    public boolean isLoading() {
+        return loading;
+    }
+
+    // Сколько известных реплике изменений ведущего еще не применено
+    public long lagChanges() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    // Верхняя оценка отставания: с последнего примененного изменения, если есть непримененные
+    public long lagMillis() {
+        return lagChanges() == 0 ? 0 : Math.max(0, System.currentTimeMillis() - appliedTime);
+    }
+
+    private void followLoop() {
+        int failures = 0;
+        while (running) {
+            try {
+                follow();
+            } catch (IOException e) {
+                //Пока ведущий недоступен, повторные неудачи не засоряют лог
+                String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                if (connected) {
+                    failures = 0;
+                }
+                if (running && failures++ == 0) {
+                    log.warn("Поток изменений от {}:{} прерван: {}", host, port, reason);
+                } else {
+                    log.debug("Нет соединения с ведущим {}:{}: {}", host, port, reason);
+                }
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow() throws IOException {
+        try (Socket connection = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            socket = connection;
+            connection.setTcpNoDelay(true);
+            out.writeLong(epoch);
+            out.writeLong(appliedSequence);
+            out.flush();
+            connected = true;
+            log.info("Подключено к ведущему {}:{}, применено изменений: {}", host, port, appliedSequence);
+            while (running) {
+                byte kind = in.readByte();
+                switch (kind) {
+                    case ChangeStreamPublisher.CHANGE -> applyChange(in);
+                    case ChangeStreamPublisher.HEARTBEAT -> {
+                        leaderSequence = in.readLong();
+                        in.readLong();
+                    }
+                    case ChangeStreamPublisher.SNAPSHOT -> loadSnapshot(in);
+                    default -> throw new IOException("Неизвестный тип сообщения потока изменений: " + kind);
+                }
+            }
+        }
+    }
+
+    private void applyChange(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long time = in.readLong();
+        byte[] record = new byte[in.readInt()];
+        in.readFully(record);
+        JournalCodec.decode(record, replayer);
+        appliedTime = time;
+        appliedSequence = sequence;
+        leaderSequence = Math.max(leaderSequence, sequence);
+        applyDelay.record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - time)));
+    }
+
+    private void loadSnapshot(DataInputStream in) throws IOException {
+        long leaderEpoch = in.readLong();
+        long sequence = in.readLong();
+        long size = in.readLong();
+        if (epoch != 0 && epoch != leaderEpoch) {
+            log.info("Ведущий перезапущен, состояние реплики заменяется его снимком");
+        }
+        long started = System.nanoTime();
+        Path file = Files.createTempFile("filmorate-replica-", ".bin");
+        try {
+            try (OutputStream target = Files.newOutputStream(file)) {
+                byte[] buffer = new byte[1 << 16];
+                for (long remaining = size; remaining > 0; ) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Снимок оборван: не получено " + remaining + " байт");
+                    }
+                    target.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            //Снимок заменяет состояние целиком: в нем нет пустых списков связей и удаленных
+            //за время отставания записей, поэтому поверх старых данных они бы остались.
+            //До конца загрузки чтения отклоняются, а не видят полупустые хранилища. Если загрузка
+            //оборвется, флаг остается, а сброшенная эпоха заставит ведущего прислать снимок снова
+            loading = true;
+            epoch = 0;
+            filmStorage.clear();
+            userStorage.clear();
+            long loaded = SnapshotFile.read(file, filmStorage, userStorage);
+            //Снимок загружен в обход уведомлений: подписчики перестраиваются целиком
+            filmStorage.recovered();
+            userStorage.recovered();
+            epoch = leaderEpoch;
+            loading = false;
+            appliedTime = System.currentTimeMillis();
+            appliedSequence = sequence;
+            leaderSequence = sequence;
+            snapshotsLoaded.increment();
+            log.info("Загружен снимок ведущего на изменении {}: {} записей за {} мс", sequence, loaded,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+// Снимок состояния хранилищ в колоночном двоичном формате.
+// Каждое поле лежит отдельной колонкой (id, даты, длины строк, байты строк, списки смежности),
+// положение колонок записано в заголовке. При старте файл отображается в память (mmap),
+// колонки читаются без разбора и промежуточных копий: списки лайков и друзей сразу
+// становятся отсортированными массивами хранилищ, а фильмы и пользователи собираются
+// параллельно по диапазонам строк.
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x464D534E;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + Column.values().length * 16;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final int NULL_LENGTH = -1;
+
+    private enum Column {
+        FILM_IDS, FILM_RELEASE_DATES, FILM_DURATIONS,
+        FILM_NAMES, FILM_NAME_LENGTHS, FILM_DESCRIPTIONS, FILM_DESCRIPTION_LENGTHS,
+        USER_IDS, USER_BIRTHDAYS,
+        USER_EMAILS, USER_EMAIL_LENGTHS, USER_LOGINS, USER_LOGIN_LENGTHS, USER_NAMES, USER_NAME_LENGTHS,
+        LIKE_VALUES, LIKE_KEYS, LIKE_COUNTS,
+        FRIEND_VALUES, FRIEND_KEYS, FRIEND_COUNTS
+    }
+
+    private SnapshotFile() {
+    }
+
+    static Path path(Path directory, long segment) {
+        return directory.resolve(String.format("snapshot-%020d.bin", segment));
+    }
+
+    // Возвращает число записанных сущностей и связей
+    static long write(Path file, InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) throws IOException {
+        List<Film> films = filmStorage.streamAllFilms().toList();
+        List<User> users = userStorage.streamAllUsers().toList();
+        //Колонки пишутся из лямбд, поэтому ошибки записи приходят как UncheckedIOException
+        try (ColumnWriter out = new ColumnWriter(file)) {
+            out.begin(Column.FILM_IDS);
+            films.forEach(film -> out.putLong(film.getId()));
+            out.begin(Column.FILM_RELEASE_DATES);
+            films.forEach(film -> out.putLong(epochDay(film.getReleaseDate())));
+            out.begin(Column.FILM_DURATIONS);
+            films.forEach(film -> out.putInt(film.getDuration() == null ? NULL_INT : film.getDuration()));
+            writeStrings(out, Column.FILM_NAMES, Column.FILM_NAME_LENGTHS, films, Film::getName);
+            writeStrings(out, Column.FILM_DESCRIPTIONS, Column.FILM_DESCRIPTION_LENGTHS, films, Film::getDescription);
+
+            out.begin(Column.USER_IDS);
+            users.forEach(user -> out.putLong(user.getId()));
+            out.begin(Column.USER_BIRTHDAYS);
+            users.forEach(user -> out.putLong(epochDay(user.getBirthday())));
+            writeStrings(out, Column.USER_EMAILS, Column.USER_EMAIL_LENGTHS, users, User::getEmail);
+            writeStrings(out, Column.USER_LOGINS, Column.USER_LOGIN_LENGTHS, users, User::getLogin);
+            writeStrings(out, Column.USER_NAMES, Column.USER_NAME_LENGTHS, users, User::getName);
+
+            long likes = writeEdges(out, Column.LIKE_VALUES, Column.LIKE_KEYS, Column.LIKE_COUNTS,
+                    films.stream().mapToLong(Film::getId).toArray(), filmStorage::getLikeIds);
+            //Списки друзей пишутся с обеих сторон: при загрузке каждый становится готовым массивом
+            long friendships = writeEdges(out, Column.FRIEND_VALUES, Column.FRIEND_KEYS, Column.FRIEND_COUNTS,
+                    users.stream().mapToLong(User::getId).toArray(), userStorage::getFriendIds);
+            return films.size() + users.size() + likes + friendships / 2;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Загружает снимок в пустые хранилища; возвращает число прочитанных сущностей и связей
+    static long read(Path file, InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.size() < HEADER_BYTES ? ByteBuffer.allocate(0)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Файл " + file + " не является снимком хранилища версии " + VERSION);
+            }
+            long expectedCrc = header.getLong();
+            ByteBuffer[] columns = new ByteBuffer[Column.values().length];
+            for (Column column : Column.values()) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Колонка " + column + " снимка " + file + " больше 2 ГБ");
+                }
+                columns[column.ordinal()] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            if (checksum(channel) != expectedCrc) {
+                throw new IOException("Контрольная сумма снимка " + file + " не совпадает");
+            }
+
+            //Сначала связи: тогда рейтинг популярности строится за одно обновление на фильм
+            long likes = readEdges(columns, Column.LIKE_VALUES, Column.LIKE_KEYS, Column.LIKE_COUNTS,
+                    filmStorage::loadLikes);
+            long friendships = readEdges(columns, Column.FRIEND_VALUES, Column.FRIEND_KEYS, Column.FRIEND_COUNTS,
+                    userStorage::loadFriends);
+            int films = readFilms(columns, filmStorage);
+            int users = readUsers(columns, userStorage);
+            return films + users + likes + friendships / 2;
+        }
+    }
+
+    private static int readFilms(ByteBuffer[] columns, InMemoryFilmStorage filmStorage) {
+        LongBuffer ids = columns[Column.FILM_IDS.ordinal()].asLongBuffer();
+        LongBuffer releaseDates = columns[Column.FILM_RELEASE_DATES.ordinal()].asLongBuffer();
+        IntBuffer durations = columns[Column.FILM_DURATIONS.ordinal()].asIntBuffer();
+        StringColumn names = new StringColumn(columns, Column.FILM_NAMES, Column.FILM_NAME_LENGTHS);
+        StringColumn descriptions = new StringColumn(columns, Column.FILM_DESCRIPTIONS,
+                Column.FILM_DESCRIPTION_LENGTHS);
+        int count = ids.limit();
+        IntStream.range(0, count).parallel().forEach(i -> {
+            int duration = durations.get(i);
+            filmStorage.replayFilm(new Film(ids.get(i), names.get(i), descriptions.get(i),
+                    duration == NULL_INT ? null : duration, date(releaseDates.get(i))));
+        });
+        return count;
+    }
+
+    private static int readUsers(ByteBuffer[] columns, InMemoryUserStorage userStorage) {
+        LongBuffer ids = columns[Column.USER_IDS.ordinal()].asLongBuffer();
+        LongBuffer birthdays = columns[Column.USER_BIRTHDAYS.ordinal()].asLongBuffer();
+        StringColumn emails = new StringColumn(columns, Column.USER_EMAILS, Column.USER_EMAIL_LENGTHS);
+        StringColumn logins = new StringColumn(columns, Column.USER_LOGINS, Column.USER_LOGIN_LENGTHS);
+        StringColumn names = new StringColumn(columns, Column.USER_NAMES, Column.USER_NAME_LENGTHS);
+        int count = ids.limit();
+        IntStream.range(0, count).parallel().forEach(i -> {
+            User user = new User();
+            user.setId(ids.get(i));
+            user.setEmail(emails.get(i));
+            user.setLogin(logins.get(i));
+            user.setName(names.get(i));
+            user.setBirthday(date(birthdays.get(i)));
+            userStorage.replayUser(user);
+        });
+        return count;
+    }
+
+    private static long readEdges(ByteBuffer[] columns, Column valuesColumn, Column keysColumn, Column countsColumn,
+                                  EdgeLoader loader) {
+        LongBuffer values = columns[valuesColumn.ordinal()].asLongBuffer();
+        LongBuffer keys = columns[keysColumn.ordinal()].asLongBuffer();
+        IntBuffer counts = columns[countsColumn.ordinal()].asIntBuffer();
+        int[] starts = prefixSums(counts);
+        IntStream.range(0, keys.limit()).parallel().forEach(i -> {
+            long[] sorted = new long[counts.get(i)];
+            values.get(starts[i], sorted);
+            loader.load(keys.get(i), sorted);
+        });
+        return values.limit();
+    }
+
+    private static <T> void writeStrings(ColumnWriter out, Column bytesColumn, Column lengthsColumn,
+                                         List<T> items, Function<T, String> field) {
+        int[] lengths = new int[items.size()];
+        out.begin(bytesColumn);
+        for (int i = 0; i < lengths.length; i++) {
+            String value = field.apply(items.get(i));
+            if (value == null) {
+                lengths[i] = NULL_LENGTH;
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                lengths[i] = bytes.length;
+                out.putBytes(bytes);
+            }
+        }
+        out.begin(lengthsColumn);
+        for (int length : lengths) {
+            out.putInt(length);
+        }
+    }
+
+    private static long writeEdges(ColumnWriter out, Column valuesColumn, Column keysColumn, Column countsColumn,
+                                   long[] ids, LongFunction<long[]> neighbours) {
+        long[] keys = new long[ids.length];
+        int[] counts = new int[ids.length];
+        int nonEmpty = 0;
+        long edges = 0;
+        out.begin(valuesColumn);
+        for (long id : ids) {
+            long[] sorted = neighbours.apply(id);
+            if (sorted.length > 0) {
+                keys[nonEmpty] = id;
+                counts[nonEmpty++] = sorted.length;
+                edges += sorted.length;
+                for (long value : sorted) {
+                    out.putLong(value);
+                }
+            }
+        }
+        out.begin(keysColumn);
+        for (int i = 0; i < nonEmpty; i++) {
+            out.putLong(keys[i]);
+        }
+        out.begin(countsColumn);
+        for (int i = 0; i < nonEmpty; i++) {
+            out.putInt(counts[i]);
+        }
+        return edges;
+    }
+
+    private static long checksum(FileChannel channel) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size = channel.size();
+        for (long position = HEADER_BYTES; position < size; position += Integer.MAX_VALUE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Integer.MAX_VALUE, size - position)));
+        }
+        return crc.getValue();
+    }
+
+    private static int[] prefixSums(IntBuffer lengths) {
+        int[] starts = new int[lengths.limit() + 1];
+        for (int i = 0; i < lengths.limit(); i++) {
+            starts[i + 1] = starts[i] + Math.max(0, lengths.get(i));
+        }
+        return starts;
+    }
+
+    private static long epochDay(LocalDate date) {
+        return date == null ? NULL_DATE : date.toEpochDay();
+    }
+
+    private static LocalDate date(long epochDay) {
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private interface EdgeLoader {
+        void load(long key, long[] sorted);
+    }
+
+    // Строковая колонка: байты UTF-8 подряд и отдельная колонка длин
+    private static final class StringColumn {
+
+        private final ByteBuffer bytes;
+        private final IntBuffer lengths;
+        private final int[] starts;
+
+        StringColumn(ByteBuffer[] columns, Column bytesColumn, Column lengthsColumn) {
+            this.bytes = columns[bytesColumn.ordinal()];
+            this.lengths = columns[lengthsColumn.ordinal()].asIntBuffer();
+            this.starts = prefixSums(lengths);
+        }
+
+        String get(int row) {
+            int length = lengths.get(row);
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            byte[] value = new byte[length];
+            bytes.get(starts[row], value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Последовательная запись колонок через буфер; заголовок с положением колонок
+    // и контрольной суммой дописывается в начало файла при закрытии
+    private static final class ColumnWriter implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final CRC32C crc = new CRC32C();
+        private final long[] offsets = new long[Column.values().length];
+        private final long[] lengths = new long[Column.values().length];
+        private Column current;
+        private long position = HEADER_BYTES;
+
+        ColumnWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void begin(Column column) {
+            end();
+            current = column;
+            offsets[column.ordinal()] = position;
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES).putLong(value);
+            position += Long.BYTES;
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES).putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putBytes(byte[] value) {
+            for (int offset = 0; offset < value.length; ) {
+                int chunk = Math.min(value.length - offset, ensure(1).remaining());
+                buffer.put(value, offset, chunk);
+                offset += chunk;
+                position += chunk;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            end();
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(crc.getValue());
+            for (int i = 0; i < offsets.length; i++) {
+                header.putLong(offsets[i]).putLong(lengths[i]);
+            }
+            header.flip();
+            long at = 0;
+            while (header.hasRemaining()) {
+                at += channel.write(header, at);
+            }
+            channel.force(true);
+            channel.close();
+        }
+
+        private void end() {
+            if (current != null) {
+                lengths[current.ordinal()] = position - offsets[current.ordinal()];
+            }
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            long at = position - buffer.remaining();
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+            buffer.clear();
+        }
+    }
+}
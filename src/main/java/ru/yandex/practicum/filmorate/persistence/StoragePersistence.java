@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Сохранение хранилищ на диск: журнал изменений + периодические снимки.
+// При старте загружается последний снимок и поверх него проигрывается хвост журнала.
+// Все изменения идемпотентны (последняя запись побеждает), поэтому снимок, снятый
+// без остановки записи, можно безопасно дополнять журналом с момента ротации.
+@Component
+@ConditionalOnProperty(name = "filmorate.persistence.enabled", havingValue = "true")
+@Slf4j
+public class StoragePersistence {
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(journal|snapshot)-(\\d{20})\\.(log|bin)");
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final Path directory;
+    private final Duration snapshotInterval;
+    private final int queueCapacity;
+    private final int maxBatch;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //ReentrantLock, а не synchronized: ожидание на нем не закрепляет виртуальный поток за несущим
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private Journal journal;
+
+    public StoragePersistence(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage,
+                              @Value("${filmorate.persistence.directory:data}") Path directory,
+                              @Value("${filmorate.persistence.snapshot-interval:10m}") Duration snapshotInterval,
+                              @Value("${filmorate.persistence.queue-capacity:65536}") int queueCapacity,
+                              @Value("${filmorate.persistence.max-batch:4096}") int maxBatch) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.queueCapacity = queueCapacity;
+        this.maxBatch = maxBatch;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        long nextSegment = recover();
+        filmStorage.recovered();
+        userStorage.recovered();
+        //Новый сегмент: хвост прошлого мог оборваться посреди записи
+        journal = new Journal(directory, nextSegment, queueCapacity, maxBatch);
+        filmStorage.addListener(journal);
+        userStorage.addListener(journal);
+        long period = snapshotInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        journal.close();
+        log.info("Журнал закрыт, записано {} изменений", journal.recordsWritten());
+    }
+
+    // Снимок текущего состояния; журнал до снимка после этого больше не нужен
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long started = System.nanoTime();
+            long segment = journal.rotate();
+            Path target = SnapshotFile.path(directory, segment);
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            long written = SnapshotFile.write(temporary, filmStorage, userStorage);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            //Старые сегменты удаляются, только когда имя нового снимка уже на диске:
+            //иначе после сбоя могло не остаться ни снимка, ни заменяемого им журнала
+            syncDirectory();
+            for (Path file : filesBefore(segment)) {
+                Files.deleteIfExists(file);
+            }
+            log.info("Снимок {} записан за {} мс: {} записей", target.getFileName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), written);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Загружает последний снимок и журнал после него; возвращает номер следующего сегмента
+    private long recover() throws IOException {
+        long started = System.nanoTime();
+        long snapshotSegment = 0;
+        long lastSegment = 0;
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files.sorted().toList();
+        }
+        for (Path file : existing) {
+            Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                long segment = Long.parseLong(matcher.group(2));
+                lastSegment = Math.max(lastSegment, segment);
+                if (matcher.group(1).equals("snapshot")) {
+                    snapshotSegment = Math.max(snapshotSegment, segment);
+                }
+            }
+        }
+        long fromSnapshot = 0;
+        if (snapshotSegment > 0) {
+            fromSnapshot = SnapshotFile.read(SnapshotFile.path(directory, snapshotSegment), filmStorage, userStorage);
+        }
+        long snapshotLoaded = System.nanoTime();
+        StorageReplayer replayer = new StorageReplayer(filmStorage, userStorage);
+        long fromJournal = 0;
+        for (long segment = Math.max(1, snapshotSegment); segment <= lastSegment; segment++) {
+            Path file = Journal.segmentPath(directory, segment);
+            if (Files.exists(file)) {
+                fromJournal += Journal.replay(file, replayer);
+            }
+        }
+        long finished = System.nanoTime();
+        log.info("Хранилища восстановлены из {} за {} мс: снимок {} записей за {} мс, журнал {} записей за {} мс",
+                directory.toAbsolutePath(), TimeUnit.NANOSECONDS.toMillis(finished - started),
+                fromSnapshot, TimeUnit.NANOSECONDS.toMillis(snapshotLoaded - started),
+                fromJournal, TimeUnit.NANOSECONDS.toMillis(finished - snapshotLoaded));
+        return lastSegment + 1;
+    }
+
+    private List<Path> filesBefore(long segment) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                return matcher.matches() && Long.parseLong(matcher.group(2)) < segment;
+            }).toList();
+        }
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            log.error("Не удалось записать снимок хранилищ: {}", e.getMessage(), e);
+        }
+    }
+}
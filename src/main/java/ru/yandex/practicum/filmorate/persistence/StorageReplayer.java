@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.persistence;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.StorageListener;
+
+// Применяет прочитанные изменения к хранилищам в обход валидации.
+// При восстановлении с диска подписчики не уведомляются (они перестраиваются после загрузки),
+// на реплике - уведомляются по каждому изменению ведущего
+class StorageReplayer implements StorageListener {
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final boolean notifyListeners;
+
+    StorageReplayer(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) {
+        this(filmStorage, userStorage, false);
+    }
+
+    StorageReplayer(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage, boolean notifyListeners) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.notifyListeners = notifyListeners;
+    }
+
+    @Override
+    public void filmSaved(Film film) {
+        if (notifyListeners) {
+            filmStorage.applyFilm(film);
+        } else {
+            filmStorage.replayFilm(film);
+        }
+    }
+
+    @Override
+    public void likeAdded(long filmId, long userId) {
+        if (notifyListeners) {
+            filmStorage.applyLike(filmId, userId);
+        } else {
+            filmStorage.replayLike(filmId, userId);
+        }
+    }
+
+    @Override
+    public void likeRemoved(long filmId, long userId) {
+        if (notifyListeners) {
+            filmStorage.applyLikeRemoval(filmId, userId);
+        } else {
+            filmStorage.replayLikeRemoval(filmId, userId);
+        }
+    }
+
+    @Override
+    public void userSaved(User user) {
+        if (notifyListeners) {
+            userStorage.applyUser(user);
+        } else {
+            userStorage.replayUser(user);
+        }
+    }
+
+    @Override
+    public void friendAdded(long userId, long friendId) {
+        if (notifyListeners) {
+            userStorage.applyFriend(userId, friendId);
+        } else {
+            userStorage.replayFriend(userId, friendId);
+        }
+    }
+
+    @Override
+    public void friendRemoved(long userId, long friendId) {
+        if (notifyListeners) {
+            userStorage.applyFriendRemoval(userId, friendId);
+        } else {
+            userStorage.replayFriendRemoval(userId, friendId);
+        }
+    }
+}
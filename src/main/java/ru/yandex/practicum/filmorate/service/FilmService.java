@@ -1,25 +1,59 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarity;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+import ru.yandex.practicum.filmorate.storage.TrendingFilms;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
 
 @Service
 public class FilmService {
 
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final TrendingFilms trendingFilms;
+    private final FilmSimilarity filmSimilarity;
+    private final SearchIndex searchIndex;
+    private final EntityVersions versions;
 
     @Autowired
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, TrendingFilms trendingFilms,
+                       FilmSimilarity filmSimilarity, SearchIndex searchIndex, EntityVersions versions) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.trendingFilms = trendingFilms;
+        this.filmSimilarity = filmSimilarity;
+        this.searchIndex = searchIndex;
+        this.versions = versions;
+    }
+
+    // ETag фильма и популярного: меняются вместе с данными
+    public String getFilmTag(long filmId) {
+        return versions.filmTag(filmId);
+    }
+
+    public String getPopularTag() {
+        return versions.popularTag();
     }
 
     public ResponseEntity<?> createFilm(Film film) {
@@ -30,10 +64,33 @@ public class FilmService {
         return filmStorage.updateFilm(film);
     }
 
+    public ImportResult importFilms(MappingIterator<Film> films) throws IOException {
+        return NdjsonImport.run(films, filmStorage::createFilms);
+    }
+
     public ResponseEntity<List<Film>> getAllFilms() {
         return filmStorage.getAllFilms();
     }
 
+    public List<Film> getFilms(Long after, int limit) {
+        return filmStorage.getFilms(after, limit);
+    }
+
+    public List<Film> findFilms(FilmFilter filter, Long after, int limit) {
+        return filmStorage.findFilms(filter, after, limit);
+    }
+
+    // Поиск по названию и описанию: сначала совпадения в названии
+    public List<Film> searchFilms(String query, int offset, int limit) {
+        return Arrays.stream(searchIndex.searchFilms(query, offset, limit))
+                .mapToObj(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+    }
+
+    public Flow.Publisher<Film> publishAllFilms() {
+        return filmStorage.publishAllFilms();
+    }
+
     public void addLike(Long filmId, Long userId) {
 
         if (filmStorage.getFilmById(filmId) == null) {
@@ -57,10 +114,55 @@ public class FilmService {
         filmStorage.removeLike(filmId, userId);
     }
 
+    public List<BatchResult<FilmLike>> addLikes(List<FilmLike> likes) {
+        List<BatchStatus> statuses = filmStorage.addLikes(likes, userStorage::containsUser);
+        List<BatchResult<FilmLike>> results = new ArrayList<>(likes.size());
+        for (int i = 0; i < likes.size(); i++) {
+            results.add(new BatchResult<>(likes.get(i), statuses.get(i)));
+        }
+        return results;
+    }
+
     public List<Film> getPopularFilms(int count) {
         return filmStorage.getPopularFilms(count);
     }
 
+    public Flow.Publisher<Film> publishPopularFilms(int count) {
+        return filmStorage.publishPopularFilms(count);
+    }
+
+    public boolean supportsTrendingWindow(Duration window) {
+        return trendingFilms.supports(window);
+    }
+
+    // Популярные за скользящее окно: лайки старше окна почти ничего не весят
+    public List<Film> getTrendingFilms(Duration window, int count) {
+        return trendingFilms.top(window, count).stream()
+                .map(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+    }
+
+    public List<Film> getLikedFilms(Long userId, Long after, int limit) {
+        userStorage.getUserById(userId);
+        return filmStorage.getLikedFilms(userId, after, limit);
+    }
+
+    // Фильмы, которые чаще всего лайкают вместе с данным
+    public List<Film> getSimilarFilms(Long filmId, int count) {
+        filmStorage.getFilmById(filmId);
+        return filmSimilarity.similar(filmId, count).stream()
+                .map(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+    }
+
+    // Фильмы, похожие на лайкнутые пользователем
+    public List<Film> getRecommendedFilms(Long userId, int count) {
+        userStorage.getUserById(userId);
+        return filmSimilarity.recommend(userId, count).stream()
+                .map(filmStorage::getFilmById)
+                .collect(Collectors.toList());
+    }
+
     public Film getFilmById(Long id) {
         return filmStorage.getFilmById(id);
     }
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Потоковая загрузка NDJSON: поток запроса разбирает записи по одной и собирает их в пачки,
+// пачки проверяются и вставляются в хранилище параллельно в своем пуле загрузки: вставка
+// может ждать диска (журнал), и общий ForkJoinPool для этого не годится. Одновременно в работе
+// не больше MAX_IN_FLIGHT пачек одной загрузки, поэтому память не зависит от ее размера; если
+// пул занят другими загрузками, пачку вставляет сам поток запроса.
+// Исключение при вставке пачки не обрывает загрузку: пачка считается отклоненной целиком.
+@Slf4j
+final class NdjsonImport {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_IN_FLIGHT = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+    // Больше ошибок в ответ не кладем, остальные только считаем
+    private static final int MAX_ERRORS = 100;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService CHUNKS = chunkPool();
+
+    private NdjsonImport() {
+    }
+
+    // createChunk вставляет пачку и возвращает ошибки проверки по позициям (null - запись создана)
+    static <T> ImportResult run(MappingIterator<T> items, Function<List<T>, List<String>> createChunk)
+            throws IOException {
+        AtomicLong created = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<ImportResult.ImportError> errors = Collections.synchronizedList(new ArrayList<>());
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+        long[] lines = new long[CHUNK_SIZE];
+        try {
+            while (true) {
+                T item;
+                try {
+                    if (!items.hasNextValue()) {
+                        break;
+                    }
+                    item = items.nextValue();
+                } catch (JsonMappingException e) {
+                    //Поля не того типа: строку пропускаем, разбор продолжается со следующей
+                    failed.incrementAndGet();
+                    addError(errors, items.getCurrentLocation().getLineNr(), e.getOriginalMessage());
+                    continue;
+                } catch (JsonProcessingException e) {
+                    //Сломанный JSON: дальше границы записей не найти, останавливаемся
+                    failed.incrementAndGet();
+                    addError(errors, e.getLocation() == null ? -1 : e.getLocation().getLineNr(),
+                            "Некорректный JSON, загрузка остановлена: " + e.getOriginalMessage());
+                    break;
+                }
+                lines[chunk.size()] = items.getCurrentLocation().getLineNr();
+                chunk.add(item);
+                if (chunk.size() == CHUNK_SIZE) {
+                    pending.add(submit(chunk, lines, createChunk, inFlight, created, failed, errors));
+                    pending.removeIf(CompletableFuture::isDone);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    lines = new long[CHUNK_SIZE];
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(submit(chunk, lines, createChunk, inFlight, created, failed, errors));
+            }
+        } finally {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        }
+        log.info("Загрузка NDJSON завершена: создано {}, отклонено {}", created.get(), failed.get());
+        return new ImportResult(created.get(), failed.get(), new ArrayList<>(errors));
+    }
+
+    private static <T> CompletableFuture<Void> submit(List<T> chunk, long[] lines,
+                                                      Function<List<T>, List<String>> createChunk,
+                                                      Semaphore inFlight, AtomicLong created, AtomicLong failed,
+                                                      List<ImportResult.ImportError> errors) {
+        //Ждем, пока освободится место: читатель не убегает вперед от вставки
+        inFlight.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                List<String> chunkErrors = createChunk.apply(chunk);
+                int rejected = 0;
+                for (int i = 0; i < chunkErrors.size(); i++) {
+                    if (chunkErrors.get(i) != null) {
+                        rejected++;
+                        addError(errors, lines[i], chunkErrors.get(i));
+                    }
+                }
+                created.addAndGet(chunkErrors.size() - rejected);
+                failed.addAndGet(rejected);
+            } catch (RuntimeException e) {
+                //Часть записей пачки могла попасть в хранилище, но подтвердить ее нельзя
+                log.error("Пачка строк {}-{} не загружена: {}", lines[0], lines[chunk.size() - 1], e.getMessage(), e);
+                failed.addAndGet(chunk.size());
+                addError(errors, lines[0], "Пачка строк " + lines[0] + "-" + lines[chunk.size() - 1]
+                        + " не загружена: " + e.getMessage());
+            } finally {
+                inFlight.release();
+            }
+        }, CHUNKS);
+    }
+
+    //Очередь пула не длиннее числа потоков; при переполнении пачку выполняет поток запроса
+    private static ExecutorService chunkPool() {
+        AtomicInteger number = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(THREADS),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ndjson-import-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static void addError(List<ImportResult.ImportError> errors, long line, String message) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(new ImportResult.ImportError(line, message));
+            }
+        }
+    }
+}
@@ -1,22 +1,51 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
+import ru.yandex.practicum.filmorate.model.FriendRecommendation;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportResult;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FriendRecommendations;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
-import java.util.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
 import java.util.stream.Collectors;
 
 @Service
 public class UserService {
 
     private final UserStorage userStorage;
+    private final FriendRecommendations friendRecommendations;
+    private final SearchIndex searchIndex;
+    private final EntityVersions versions;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, FriendRecommendations friendRecommendations,
+                       SearchIndex searchIndex, EntityVersions versions) {
         this.userStorage = userStorage;
+        this.friendRecommendations = friendRecommendations;
+        this.searchIndex = searchIndex;
+        this.versions = versions;
+    }
+
+    // ETag пользователя и его списка друзей: меняются вместе с данными
+    public String getUserTag(long userId) {
+        return versions.userTag(userId);
+    }
+
+    public String getFriendsTag(long userId) {
+        return versions.friendsTag(userId);
     }
 
     public ResponseEntity<?> createUser(User user) {
@@ -27,14 +56,42 @@ public class UserService {
         return userStorage.updateUser(user);
     }
 
+    public ImportResult importUsers(MappingIterator<User> users) throws IOException {
+        return NdjsonImport.run(users, userStorage::createUsers);
+    }
+
     public ResponseEntity<List<User>> getAllUsers() {
         return userStorage.getAllUsers();
     }
 
+    public List<User> getUsers(Long after, int limit) {
+        return userStorage.getUsers(after, limit);
+    }
+
+    // Поиск по логину и имени
+    public List<User> searchUsers(String query, int offset, int limit) {
+        return Arrays.stream(searchIndex.searchUsers(query, offset, limit))
+                .mapToObj(userStorage::getUserById)
+                .collect(Collectors.toList());
+    }
+
+    public Flow.Publisher<User> publishAllUsers() {
+        return userStorage.publishAllUsers();
+    }
+
     public void addFriend(Long userId, Long friendId) {
         userStorage.addFriend(userId, friendId);
     }
 
+    public List<BatchResult<Friendship>> addFriends(List<Friendship> friendships) {
+        List<BatchStatus> statuses = userStorage.addFriends(friendships);
+        List<BatchResult<Friendship>> results = new ArrayList<>(friendships.size());
+        for (int i = 0; i < friendships.size(); i++) {
+            results.add(new BatchResult<>(friendships.get(i), statuses.get(i)));
+        }
+        return results;
+    }
+
     public void removeFriend(Long userId, Long friendId) {
         userStorage.removeFriend(userId, friendId);
     }
@@ -43,23 +100,27 @@ public class UserService {
         return userStorage.getFriends(id);
     }
 
-    public List<User> getCommonFriends(Long userId, Long otherId) {
-        List<User> userFriends = getFriends(userId);
-        List<User> otherFriends = getFriends(otherId);
+    public Flow.Publisher<User> publishFriends(long id) {
+        return userStorage.publishFriends(id);
+    }
 
-        if (userFriends == null || otherFriends == null) {
-            return Collections.emptyList();
-        }
+    public List<User> getCommonFriends(Long userId, Long otherId) {
+        return userStorage.getCommonFriends(userId, otherId);
+    }
 
-        Set<Long> userFriendIds = userFriends.stream()
-                .filter(Objects::nonNull) // Added null check here
-                .map(User::getId)
-                .collect(Collectors.toSet());
+    public List<User> getCommonFriends(Long userId, Long otherId, Long after, int limit) {
+        return userStorage.getCommonFriends(userId, otherId, after, limit);
+    }
 
-        return otherFriends.stream()
-                .filter(Objects::nonNull) // Added null check here
-                .filter(friend -> userFriendIds.contains(friend.getId()))
-                .collect(Collectors.toList());
+    // Не-друзья по убыванию числа общих друзей
+    public List<FriendRecommendation> getRecommendations(Long userId, int limit) {
+        userStorage.getUserById(userId);
+        long[] pairs = friendRecommendations.recommend(userId, limit);
+        List<FriendRecommendation> result = new ArrayList<>(pairs.length / 2);
+        for (int i = 0; i < pairs.length; i += 2) {
+            result.add(new FriendRecommendation(userStorage.getUserById(pairs[i]), (int) pairs[i + 1]));
+        }
+        return result;
     }
 
     public User getUserById(Long id) {
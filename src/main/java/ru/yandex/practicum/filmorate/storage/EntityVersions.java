@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Версии записей и списков для ETag: изменение берет следующее значение общего счетчика.
+// Хранятся только версии изменявшихся с запуска записей, у остальных версия 0.
+// В ETag входит случайная эпоха процесса: после перезапуска счетчик начинается заново,
+// и старые ETag не должны совпасть с новыми данными. По той же причине эпоха меняется, когда
+// хранилище загружено целиком в обход уведомлений (восстановление с диска, снимок на реплике).
+// Читать версию нужно до данных: если запись изменится между чтениями, клиент получит
+// новые данные со старой версией и при следующем запросе просто получит их еще раз.
+@Component
+public class EntityVersions {
+
+    private volatile String epoch = newEpoch();
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<Long, Long> films = new ConcurrentHashMap<>();
+    private final Map<Long, Long> users = new ConcurrentHashMap<>();
+    //Список друзей включает самих друзей, поэтому меняется и при изменении любого из них
+    private final Map<Long, Long> friendLists = new ConcurrentHashMap<>();
+    //Популярное: лайки и содержимое фильмов. Рейтинг "в тренде" затухает у всех фильмов
+    //одинаково, поэтому между лайками порядок в нем не меняется. Версия меняется в конце
+    //операции, когда рейтинги всех подписчиков (в том числе "в тренде") уже обновлены:
+    //иначе ответ, собранный между сменой версии и обновлением рейтинга, попал бы в кэш
+    //со старыми данными под новой версией
+    private final AtomicLong popular = new AtomicLong();
+
+    public EntityVersions(FilmStorage filmStorage, UserStorage userStorage) {
+        filmStorage.addListener(new StorageListener() {
+            @Override
+            public void filmSaved(Film film) {
+                films.put(film.getId(), clock.incrementAndGet());
+            }
+
+            //Любая завершенная запись фильмов - создание, изменение или лайки - меняет популярное
+            @Override
+            public void writeCompleted() {
+                bump(popular);
+            }
+
+            @Override
+            public void recovered() {
+                epoch = newEpoch();
+            }
+        });
+        userStorage.addListener(new StorageListener() {
+            @Override
+            public void userSaved(User user) {
+                long version = clock.incrementAndGet();
+                users.put(user.getId(), version);
+                for (long friendId : userStorage.getFriendIds(user.getId())) {
+                    friendLists.merge(friendId, version, Math::max);
+                }
+            }
+
+            @Override
+            public void friendAdded(long userId, long friendId) {
+                friendsChanged(userId, friendId);
+            }
+
+            @Override
+            public void friendRemoved(long userId, long friendId) {
+                friendsChanged(userId, friendId);
+            }
+
+            @Override
+            public void recovered() {
+                epoch = newEpoch();
+            }
+        });
+    }
+
+    public String filmTag(long filmId) {
+        return tag(films.getOrDefault(filmId, 0L));
+    }
+
+    public String userTag(long userId) {
+        return tag(users.getOrDefault(userId, 0L));
+    }
+
+    public String friendsTag(long userId) {
+        return tag(friendLists.getOrDefault(userId, 0L));
+    }
+
+    public String popularTag() {
+        return tag(popular.get());
+    }
+
+    private void friendsChanged(long userId, long friendId) {
+        long version = clock.incrementAndGet();
+        friendLists.merge(userId, version, Math::max);
+        friendLists.merge(friendId, version, Math::max);
+    }
+
+    private long bump(AtomicLong collection) {
+        long version = clock.incrementAndGet();
+        collection.accumulateAndGet(version, Math::max);
+        return version;
+    }
+
+    private static String newEpoch() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private String tag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+}
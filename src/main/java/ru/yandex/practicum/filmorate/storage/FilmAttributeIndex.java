@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Вторичные индексы фильмов по дате выхода и длительности: пары (значение, id) по возрастанию.
+// Для запроса с диапазонами выбирается самый узкий индекс: диапазоны обходятся поочередно,
+// и первый закончившийся - самый избирательный, так что выбор стоит не больше двух размеров
+// наименьшего диапазона. Если подходящих фильмов так много, что страница быстрее наберется
+// обходом каталога по id с проверкой условий, индекс не используется.
+// Обновления одного фильма должны идти под его блокировкой в хранилище.
+class FilmAttributeIndex {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::value)
+            .thenComparingLong(Entry::filmId);
+    //Значение не задано - фильм в индекс не попадает
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private final NavigableSet<Entry> byRelease = new ConcurrentSkipListSet<>(ORDER);
+    private final NavigableSet<Entry> byDuration = new ConcurrentSkipListSet<>(ORDER);
+    //Проиндексированные значения: фильм могли изменить на месте, старые значения берем отсюда
+    private final Map<Long, long[]> indexed = new ConcurrentHashMap<>();
+
+    void update(Film film) {
+        long release = film.getReleaseDate() == null ? ABSENT : film.getReleaseDate().toEpochDay();
+        long duration = film.getDuration() == null ? ABSENT : film.getDuration();
+        long[] previous = indexed.put(film.getId(), new long[]{release, duration});
+        move(byRelease, film.getId(), previous == null ? ABSENT : previous[0], release);
+        move(byDuration, film.getId(), previous == null ? ABSENT : previous[1], duration);
+    }
+
+    void clear() {
+        indexed.clear();
+        byRelease.clear();
+        byDuration.clear();
+    }
+
+    // id кандидатов по возрастанию из самого узкого диапазона или null, если выгоднее обойти каталог.
+    // Кандидаты нужно проверить условием целиком: остальные диапазоны здесь не учитываются
+    long[] select(FilmFilter filter, int limit, int catalogSize) {
+        List<NavigableSet<Entry>> ranges = new ArrayList<>(2);
+        if (filter.hasReleaseRange()) {
+            ranges.add(range(byRelease,
+                    filter.getReleasedFrom() == null ? ABSENT + 1 : filter.getReleasedFrom().toEpochDay(),
+                    filter.getReleasedTo() == null ? Long.MAX_VALUE : filter.getReleasedTo().toEpochDay()));
+        }
+        if (filter.hasDurationRange()) {
+            ranges.add(range(byDuration,
+                    filter.getMinDuration() == null ? ABSENT + 1 : filter.getMinDuration(),
+                    filter.getMaxDuration() == null ? Long.MAX_VALUE : filter.getMaxDuration()));
+        }
+        if (ranges.isEmpty()) {
+            return null;
+        }
+        //Обход по id с долей подходящих m/n наберет limit фильмов примерно за limit * n / m шагов,
+        //индекс - за m шагов и сортировку; индекс выгоднее, пока m меньше sqrt(limit * n)
+        double threshold = Math.sqrt((double) Math.max(0, limit) * catalogSize);
+        List<Iterator<Entry>> iterators = new ArrayList<>(ranges.size());
+        ranges.forEach(range -> iterators.add(range.iterator()));
+        for (long seen = 0; seen <= threshold; seen++) {
+            for (int i = 0; i < iterators.size(); i++) {
+                if (!iterators.get(i).hasNext()) {
+                    return ids(ranges.get(i));
+                }
+                iterators.get(i).next();
+            }
+        }
+        return null;
+    }
+
+    private static NavigableSet<Entry> range(NavigableSet<Entry> index, long from, long to) {
+        if (from > to) {
+            return index.subSet(new Entry(0, 0), false, new Entry(0, 0), false);
+        }
+        return index.subSet(new Entry(from, Long.MIN_VALUE), true, new Entry(to, Long.MAX_VALUE), true);
+    }
+
+    private static long[] ids(NavigableSet<Entry> range) {
+        long[] ids = new long[16];
+        int size = 0;
+        for (Entry entry : range) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = entry.filmId();
+        }
+        ids = Arrays.copyOf(ids, size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static void move(NavigableSet<Entry> index, long filmId, long previous, long value) {
+        if (previous == value) {
+            return;
+        }
+        if (previous != ABSENT) {
+            index.remove(new Entry(previous, filmId));
+        }
+        if (value != ABSENT) {
+            index.add(new Entry(value, filmId));
+        }
+    }
+
+    private record Entry(long value, long filmId) {
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Рейтинг фильмов по числу лайков: обновляется за O(log n) при каждом лайке,
+// поэтому для топ-N не нужно сортировать весь каталог.
+// Обновления одного фильма должны идти под его блокировкой в хранилище,
+// чтение рейтинга блокировок не требует.
+class FilmPopularityIndex {
+
+    // Больше лайков - выше; при равенстве меньший id идет первым
+    static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    void update(long filmId, int likes) {
+        Entry previous = entries.get(filmId);
+        if (previous != null) {
+            if (previous.likes() == likes) {
+                return;
+            }
+            // Сначала убираем старую позицию: читатель может на мгновение не увидеть фильм,
+            // но никогда не увидит его дважды
+            ranking.remove(previous);
+        }
+        Entry entry = new Entry(filmId, likes);
+        entries.put(filmId, entry);
+        ranking.add(entry);
+    }
+
+    void clear() {
+        ranking.clear();
+        entries.clear();
+    }
+
+    List<Long> top(int count) {
+        List<Long> result = new ArrayList<>(Math.min(Math.max(count, 0), entries.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (result.size() < count && iterator.hasNext()) {
+            result.add(iterator.next().filmId());
+        }
+        return result;
+    }
+
+    // Весь рейтинг без копирования; обход, как и в top, видит обновления, случившиеся по ходу
+    Iterator<Entry> iterator() {
+        return ranking.iterator();
+    }
+
+    // Первые count фильмов рейтинга, читаемые по мере обхода; удаленные фильмы пропускаются
+    static Stream<Film> films(Iterator<Entry> ranking, LongFunction<Film> film, int count) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(ranking,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(entry -> film.apply(entry.filmId()))
+                .filter(Objects::nonNull)
+                .limit(count);
+    }
+
+    record Entry(long filmId, int likes) {
+    }
+}
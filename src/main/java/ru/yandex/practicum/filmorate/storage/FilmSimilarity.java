@@ -0,0 +1,352 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Похожие фильмы по совместным лайкам ("кто лайкнул это, лайкнул и..."). Для каждого фильма
+// хранится счетчик совместных лайков с другими фильмами, обрезаемый до neighbours самых частых;
+// обновляется как подписчик хранилища - лайк пользователя добавляет по единице к парам с его
+// остальными фильмами. Под блокировкой фильма лайк только кладется в ограниченную очередь,
+// пары обновляет отдельный поток; если очередь переполнилась, он собирает индекс заново. Сходство - косинус: совместные лайки / sqrt(лайки одного * лайки другого).
+// Очень популярные фильмы (от popularThreshold лайков) входят в пары почти с каждым лайком
+// сервиса, поэтому для них счетчик заменяется MinHash-подписью с LSH, а сходство - оценкой Жаккара.
+// Пользователи с большим числом лайков (больше maxUserLikes) в счетчики не попадают: их пары
+// дорого обновлять, а сигнала в них мало. Пользователь, переваливший порог, может оставить
+// в счетчиках следы - это допустимая неточность обрезанного индекса. Так же допустимы
+// расхождения на единицу от лайков, попавших в хранилище, пока поток разбирал очередь.
+@Component
+@Slf4j
+public class FilmSimilarity implements StorageListener {
+
+    //Столько лайков поток обновления разбирает за один захват блокировки
+    private static final int BATCH = 1024;
+
+    private static final Comparator<Scored> BY_SCORE = Comparator.comparingDouble(Scored::score)
+            .reversed()
+            .thenComparingLong(Scored::filmId);
+
+    private final InMemoryFilmStorage storage;
+    private final int neighbours;
+    private final int popularThreshold;
+    private final int maxUserLikes;
+    //Индекс подменяется целиком при пересборке: чтение видит либо старый, либо готовый новый
+    private volatile Map<Long, Neighbours> cooccurrence = new ConcurrentHashMap<>();
+    private volatile MinHashLsh popular = new MinHashLsh();
+    //Лайки, еще не учтенные в индексе, в порядке постановки
+    private final BlockingQueue<Change> changes;
+    private volatile boolean overflowed;
+    //Разбор очереди и пересборка индекса не идут одновременно
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final Thread updater;
+
+    @Autowired
+    public FilmSimilarity(InMemoryFilmStorage storage,
+                          @Value("${filmorate.similarity.neighbours:16}") int neighbours,
+                          @Value("${filmorate.similarity.popular-threshold:5000}") int popularThreshold,
+                          @Value("${filmorate.similarity.max-user-likes:1000}") int maxUserLikes,
+                          @Value("${filmorate.similarity.max-pending-likes:65536}") int maxPendingLikes) {
+        this.storage = storage;
+        this.neighbours = neighbours;
+        this.popularThreshold = popularThreshold;
+        this.maxUserLikes = maxUserLikes;
+        this.changes = new ArrayBlockingQueue<>(maxPendingLikes);
+        this.updater = new Thread(this::updateLoop, "similarity-updater");
+        updater.setDaemon(true);
+        updater.start();
+        storage.addListener(this);
+    }
+
+    public FilmSimilarity(InMemoryFilmStorage storage, int neighbours, int popularThreshold, int maxUserLikes) {
+        this(storage, neighbours, popularThreshold, maxUserLikes, 65_536);
+    }
+
+    public FilmSimilarity(InMemoryFilmStorage storage) {
+        this(storage, 16, 5000, 1000);
+    }
+
+    @PreDestroy
+    public void stop() {
+        updater.interrupt();
+    }
+
+    // id похожих фильмов по убыванию сходства.
+    // count приходит из запроса без проверки (@Positive в контроллере не применяется)
+    public List<Long> similar(long filmId, int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        List<Scored> scored = scored(filmId);
+        List<Long> result = new ArrayList<>(Math.min(count, scored.size()));
+        for (int i = 0; i < scored.size() && i < count; i++) {
+            result.add(scored.get(i).filmId());
+        }
+        return result;
+    }
+
+    // id рекомендуемых пользователю фильмов: сумма сходств с его лайкнутыми фильмами,
+    // сами лайкнутые фильмы исключаются. Берутся последние maxUserLikes лайкнутых фильмов
+    public List<Long> recommend(long userId, int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        long[] liked = storage.getLikedFilmIds(userId);
+        Map<Long, Double> scores = new HashMap<>();
+        for (int i = Math.max(0, liked.length - maxUserLikes); i < liked.length; i++) {
+            for (Scored neighbour : scored(liked[i])) {
+                if (Arrays.binarySearch(liked, neighbour.filmId()) < 0) {
+                    scores.merge(neighbour.filmId(), neighbour.score(), Double::sum);
+                }
+            }
+        }
+        return scores.entrySet().stream()
+                .map(entry -> new Scored(entry.getKey(), entry.getValue()))
+                .sorted(BY_SCORE)
+                .limit(count)
+                .map(Scored::filmId)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void likeAdded(long filmId, long userId) {
+        enqueue(new Change(filmId, userId, 1));
+    }
+
+    @Override
+    public void likeRemoved(long filmId, long userId) {
+        enqueue(new Change(filmId, userId, -1));
+    }
+
+    // Лайки восстановлены с диска без уведомлений - собираем индекс заново.
+    // Очередь относится к прежним данным и отбрасывается
+    @Override
+    public void recovered() {
+        updateLock.lock();
+        try {
+            changes.clear();
+            overflowed = false;
+            rebuild();
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    //Вызывается под блокировкой фильма: только очередь, пары считает поток обновления
+    private void enqueue(Change change) {
+        if (!changes.offer(change)) {
+            overflowed = true;
+        }
+        LockSupport.unpark(updater);
+    }
+
+    private void updateLoop() {
+        List<Change> batch = new ArrayList<>(BATCH);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (changes.isEmpty() && !overflowed) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                updateLock.lock();
+                try {
+                    if (overflowed) {
+                        //Флаг сбрасывается до очистки: переполнение во время пересборки не потеряется
+                        overflowed = false;
+                        changes.clear();
+                        log.warn("Очередь лайков для похожих фильмов переполнена, индекс собирается заново");
+                        rebuild();
+                    } else {
+                        changes.drainTo(batch, BATCH);
+                        apply(batch);
+                        batch.clear();
+                    }
+                } finally {
+                    updateLock.unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Поток обновления похожих фильмов остановлен", e);
+        }
+    }
+
+    //Фильмы пользователя на момент каждого лайка восстанавливаются из текущих: лайки пачки,
+    //еще не разобранные к этому месту, откатываются
+    private void apply(List<Change> batch) {
+        Map<Long, LongSortedSet> likedBefore = new HashMap<>();
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Change change = batch.get(i);
+            LongSortedSet liked = likedBefore.computeIfAbsent(change.userId(),
+                    userId -> new LongSortedSet(storage.getLikedFilmIds(userId)));
+            if (change.delta() > 0) {
+                liked.remove(change.filmId());
+            } else {
+                liked.add(change.filmId());
+            }
+        }
+        for (Change change : batch) {
+            LongSortedSet liked = likedBefore.get(change.userId());
+            if (change.delta() > 0) {
+                liked.add(change.filmId());
+                added(change.filmId(), change.userId(), liked);
+            } else {
+                removed(change.filmId(), change.userId(), liked);
+                liked.remove(change.filmId());
+            }
+        }
+    }
+
+    private void added(long filmId, long userId, LongSortedSet liked) {
+        if (popular.contains(filmId)) {
+            popular.add(filmId, userId);
+        } else if (storage.likeCount(filmId) >= popularThreshold) {
+            //Обратно в обычные не переводим: счетчик пришлось бы собирать заново по всем лайкам
+            popular.put(filmId, storage.getLikeIds(filmId));
+            cooccurrence.remove(filmId);
+        }
+        if (liked.size() <= maxUserLikes) {
+            updatePairs(filmId, liked.toArray(), 1);
+        }
+    }
+
+    //liked - фильмы пользователя еще со снимаемым лайком
+    private void removed(long filmId, long userId, LongSortedSet liked) {
+        if (popular.contains(filmId) && popular.affectedByRemoval(filmId, userId)) {
+            popular.put(filmId, storage.getLikeIds(filmId));
+        }
+        if (liked.size() <= maxUserLikes) {
+            updatePairs(filmId, liked.toArray(), -1);
+        }
+    }
+
+    //Новый индекс собирается рядом с прежним и подменяет его целиком
+    private void rebuild() {
+        Map<Long, Neighbours> counts = new ConcurrentHashMap<>();
+        MinHashLsh signatures = new MinHashLsh();
+        storage.streamAllFilms()
+                .map(Film::getId)
+                .filter(filmId -> storage.likeCount(filmId) >= popularThreshold)
+                .forEach(filmId -> signatures.put(filmId, storage.getLikeIds(filmId)));
+        for (long userId : storage.usersWithLikes()) {
+            long[] liked = storage.getLikedFilmIds(userId);
+            if (liked.length > maxUserLikes) {
+                continue;
+            }
+            for (long filmId : liked) {
+                if (!signatures.contains(filmId)) {
+                    counts.computeIfAbsent(filmId, id -> new Neighbours()).addAll(filmId, liked, 1);
+                }
+            }
+        }
+        popular = signatures;
+        cooccurrence = counts;
+    }
+
+    //Пара учитывается в счетчике каждого обычного фильма из двух
+    private void updatePairs(long filmId, long[] otherFilmIds, int delta) {
+        if (!popular.contains(filmId)) {
+            neighbours(filmId).addAll(filmId, otherFilmIds, delta);
+        }
+        for (long otherId : otherFilmIds) {
+            if (otherId != filmId && !popular.contains(otherId)) {
+                neighbours(otherId).add(filmId, delta);
+            }
+        }
+    }
+
+    private Neighbours neighbours(long filmId) {
+        return cooccurrence.computeIfAbsent(filmId, id -> new Neighbours());
+    }
+
+    private List<Scored> scored(long filmId) {
+        List<Scored> scored = new ArrayList<>();
+        if (popular.contains(filmId)) {
+            for (long candidate : popular.candidates(filmId)) {
+                scored.add(new Scored(candidate, popular.jaccard(filmId, candidate)));
+            }
+        } else {
+            Neighbours counts = cooccurrence.get(filmId);
+            if (counts == null) {
+                return scored;
+            }
+            long[] top = counts.top(neighbours);
+            double likes = storage.likeCount(filmId);
+            for (int i = 0; i < top.length; i += 2) {
+                double otherLikes = storage.likeCount(top[i]);
+                if (likes > 0 && otherLikes > 0) {
+                    scored.add(new Scored(top[i], top[i + 1] / Math.sqrt(likes * otherLikes)));
+                }
+            }
+        }
+        scored.sort(BY_SCORE);
+        return scored;
+    }
+
+    // Счетчик совместных лайков одного фильма; когда он вырастает вдвое против нужного,
+    // оставляем только самых частых соседей
+    private class Neighbours {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongCounts counts = new LongCounts(neighbours);
+
+        void add(long otherId, int delta) {
+            lock.lock();
+            try {
+                counts.add(otherId, delta);
+                prune();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void addAll(long filmId, long[] otherIds, int delta) {
+            lock.lock();
+            try {
+                for (long otherId : otherIds) {
+                    if (otherId != filmId) {
+                        counts.add(otherId, delta);
+                        prune();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long[] top(int limit) {
+            lock.lock();
+            try {
+                return counts.top(limit);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void prune() {
+            if (counts.size() > neighbours * 2) {
+                counts.retainTop(neighbours);
+            }
+        }
+    }
+
+    private record Scored(long filmId, double score) {
+    }
+
+    private record Change(long filmId, long userId, int delta) {
+    }
+}
@@ -1,22 +1,56 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
 import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
 
 public interface FilmStorage {
+    // Подписчики получают изменения синхронно, под блокировкой фильма
+    void addListener(StorageListener listener);
+
     ResponseEntity<?> createFilm(Film film);
 
     ResponseEntity<?> updateFilm(Film film);
 
+    // Пакетное создание: ошибки проверки по позициям, null - фильм создан и получил id
+    List<String> createFilms(List<Film> films);
+
     ResponseEntity<List<Film>> getAllFilms();
 
+    // Страница фильмов по возрастанию id: после after (если задан), не более limit
+    List<Film> getFilms(Long after, int limit);
+
+    // Фильмы, подходящие под условия, по возрастанию id: после after (если задан), не более limit
+    List<Film> findFilms(FilmFilter filter, Long after, int limit);
+
+    // Все фильмы по возрастанию id без копирования в список, для потоковой выдачи
+    Stream<Film> streamAllFilms();
+
+    // То же с учетом спроса: следующие фильмы читаются, только когда подписчик их запросил
+    Flow.Publisher<Film> publishAllFilms();
+
     void addLike(Long filmId, Long userId);
 
     void removeLike(Long filmId, Long userId);
 
+    // Пакетная постановка лайков: каждый фильм и пользователь проверяется один раз,
+    // результаты - в порядке пар
+    List<BatchStatus> addLikes(List<FilmLike> likes, LongPredicate userExists);
+
     List<Film> getPopularFilms(int count);
 
+    // Первые count популярных фильмов по мере спроса подписчика
+    Flow.Publisher<Film> publishPopularFilms(int count);
+
+    // Лайкнутые пользователем фильмы по возрастанию id: после after (если задан), не более limit
+    List<Film> getLikedFilms(long userId, Long after, int limit);
+
     Film getFilmById(Long filmId);
 }
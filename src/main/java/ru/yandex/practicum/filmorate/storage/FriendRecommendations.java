@@ -0,0 +1,301 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Рекомендации друзей: не-друзья пользователя по убыванию числа общих друзей.
+// Считаются обходом в ширину на два шага; друзья-хабы (больше maxFriendDegree друзей)
+// не раскрываются - они связаны почти со всеми и дают много работы и мало смысла.
+// У пользователя с большим числом друзей обход делится на задачи fork-join.
+// Для недавно запрашивавших (активных) пользователей результат хранится готовым:
+// изменения дружбы приходят как подписчику хранилища, а отдельный поток пересчитывает
+// рекомендации затронутых активных пользователей - самих участников и их друзей.
+// Затронутые копятся в ограниченном множестве без повторов; если за всплеском записей
+// оно переполнилось, поток пересчитывает всех активных пользователей.
+@Component
+@Slf4j
+public class FriendRecommendations implements StorageListener {
+
+    //Меньше стольких друзей на задачу делить обход уже невыгодно
+    private static final int SEQUENTIAL_FRIENDS = 64;
+
+    private final InMemoryUserStorage storage;
+    private final int maxFriendDegree;
+    private final int parallelThreshold;
+    private final int precomputed;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Map<Long, Ranked> cache;
+    //Пользователи с изменившимися друзьями, еще не разобранные потоком пересчета
+    private final Set<Long> touched = ConcurrentHashMap.newKeySet();
+    private final int maxTouched;
+    private volatile boolean overflowed;
+    private final Thread refresher;
+
+    @Autowired
+    public FriendRecommendations(InMemoryUserStorage storage,
+                                 @Value("${filmorate.recommendations.max-friend-degree:10000}") int maxFriendDegree,
+                                 @Value("${filmorate.recommendations.parallel-threshold:2048}") int parallelThreshold,
+                                 @Value("${filmorate.recommendations.active-users:10000}") int activeUsers,
+                                 @Value("${filmorate.recommendations.precomputed:50}") int precomputed,
+                                 @Value("${filmorate.recommendations.max-pending-changes:65536}") int maxTouched) {
+        this.storage = storage;
+        this.maxFriendDegree = maxFriendDegree;
+        this.parallelThreshold = parallelThreshold;
+        this.precomputed = precomputed;
+        this.maxTouched = maxTouched;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Ranked> eldest) {
+                return size() > activeUsers;
+            }
+        };
+        this.refresher = new Thread(this::refreshLoop, "recommendations-refresher");
+        refresher.setDaemon(true);
+        refresher.start();
+        storage.addListener(this);
+    }
+
+    public FriendRecommendations(InMemoryUserStorage storage, int maxFriendDegree, int parallelThreshold,
+                                 int activeUsers, int precomputed) {
+        this(storage, maxFriendDegree, parallelThreshold, activeUsers, precomputed, 65_536);
+    }
+
+    public FriendRecommendations(InMemoryUserStorage storage) {
+        this(storage, 10_000, 2048, 10_000, 50);
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.interrupt();
+    }
+
+    // Пары [id, число общих друзей] подряд, не более limit пар.
+    // limit приходит из запроса без проверки (@Positive в контроллере не применяется)
+    public long[] recommend(long userId, int limit) {
+        if (limit <= 0) {
+            return LongSortedSet.EMPTY;
+        }
+        if (limit > precomputed) {
+            return compute(userId, limit);
+        }
+        Ranked ranked = cached(userId);
+        if (ranked == null || ranked.stale) {
+            ranked = new Ranked(compute(userId, precomputed));
+            cacheLock.lock();
+            try {
+                cache.put(userId, ranked);
+            } finally {
+                cacheLock.unlock();
+            }
+        }
+        return Arrays.copyOf(ranked.pairs, (int) Math.min(ranked.pairs.length, limit * 2L));
+    }
+
+    @Override
+    public void friendAdded(long userId, long friendId) {
+        changed(userId, friendId);
+    }
+
+    @Override
+    public void friendRemoved(long userId, long friendId) {
+        changed(userId, friendId);
+    }
+
+    // Дружбы загружены заново без уведомлений: готовые рекомендации больше ничему не соответствуют
+    @Override
+    public void recovered() {
+        cacheLock.lock();
+        try {
+            cache.clear();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    long[] compute(long userId, int limit) {
+        long[] friendIds = storage.getFriendIds(userId);
+        LongCounts counts = friendIds.length >= parallelThreshold
+                ? ForkJoinPool.commonPool().invoke(new CountTask(userId, friendIds, 0, friendIds.length))
+                : count(userId, friendIds, 0, friendIds.length);
+        return counts.top(limit);
+    }
+
+    //Друзья друзей из friendIds[from, to), кроме самого пользователя и его друзей
+    private LongCounts count(long userId, long[] friendIds, int from, int to) {
+        LongCounts counts = new LongCounts((to - from) * 16);
+        for (int i = from; i < to; i++) {
+            if (storage.friendCount(friendIds[i]) > maxFriendDegree) {
+                continue;
+            }
+            for (long candidate : storage.getFriendIds(friendIds[i])) {
+                if (candidate != userId && Arrays.binarySearch(friendIds, candidate) < 0) {
+                    counts.add(candidate, 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private Ranked cached(long userId) {
+        cacheLock.lock();
+        try {
+            return cache.get(userId);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    //Вызывается под блокировкой пары: помечаем только участников, остальное - в фоне
+    private void changed(long userId, long friendId) {
+        markStale(userId);
+        markStale(friendId);
+        touch(userId);
+        touch(friendId);
+        LockSupport.unpark(refresher);
+    }
+
+    private void touch(long userId) {
+        //size() у ConcurrentHashMap - приблизительный, но граница нужна только против неограниченного роста
+        if (touched.size() < maxTouched) {
+            touched.add(userId);
+        } else if (!touched.contains(userId)) {
+            overflowed = true;
+        }
+    }
+
+    private void markStale(long userId) {
+        Ranked ranked = cached(userId);
+        if (ranked != null) {
+            ranked.stale = true;
+        }
+    }
+
+    private void refreshLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (touched.isEmpty() && !overflowed) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                //Флаг сбрасывается до разбора: переполнение во время разбора не потеряется
+                boolean all = overflowed;
+                overflowed = false;
+                Set<Long> changed = new HashSet<>();
+                for (Iterator<Long> iterator = touched.iterator(); iterator.hasNext(); ) {
+                    changed.add(iterator.next());
+                    iterator.remove();
+                }
+                for (long userId : all ? activeUsers() : affectedActiveUsers(changed)) {
+                    markStale(userId);
+                    refresh(userId);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Поток пересчета рекомендаций остановлен", e);
+        }
+    }
+
+    private Set<Long> activeUsers() {
+        cacheLock.lock();
+        try {
+            return new HashSet<>(cache.keySet());
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    //Активные пользователи, у которых поменялись друзья или друзья друзей
+    private Set<Long> affectedActiveUsers(Set<Long> changed) {
+        Set<Long> active = activeUsers();
+        Set<Long> affected = new HashSet<>();
+        for (long userId : changed) {
+            if (active.contains(userId)) {
+                affected.add(userId);
+            }
+            //Перебираем меньшее из двух: друзей изменившегося или активных пользователей
+            if (storage.friendCount(userId) < active.size()) {
+                for (long friendId : storage.getFriendIds(userId)) {
+                    if (active.contains(friendId)) {
+                        affected.add(friendId);
+                    }
+                }
+            } else {
+                for (long activeId : active) {
+                    if (storage.areFriends(activeId, userId)) {
+                        affected.add(activeId);
+                    }
+                }
+            }
+        }
+        return affected;
+    }
+
+    private void refresh(long userId) {
+        Ranked fresh = new Ranked(compute(userId, precomputed));
+        cacheLock.lock();
+        try {
+            //Пока считали, пользователь мог выпасть из активных - не возвращаем его
+            cache.replace(userId, fresh);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private static class Ranked {
+
+        final long[] pairs;
+        volatile boolean stale;
+
+        Ranked(long[] pairs) {
+            this.pairs = pairs;
+        }
+    }
+
+    private class CountTask extends RecursiveTask<LongCounts> {
+
+        private final long userId;
+        private final long[] friendIds;
+        private final int from;
+        private final int to;
+
+        CountTask(long userId, long[] friendIds, int from, int to) {
+            this.userId = userId;
+            this.friendIds = friendIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongCounts compute() {
+            if (to - from <= SEQUENTIAL_FRIENDS) {
+                return count(userId, friendIds, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(userId, friendIds, from, middle);
+            left.fork();
+            LongCounts right = new CountTask(userId, friendIds, middle, to).compute();
+            LongCounts merged = left.join();
+            if (merged.size() < right.size()) {
+                right.addAll(merged);
+                return right;
+            }
+            merged.addAll(right);
+            return merged;
+        }
+    }
+}
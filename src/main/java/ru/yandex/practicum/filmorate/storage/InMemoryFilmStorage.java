@@ -1,90 +1,283 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.RequestBody;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
-import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.exception.StorageUnavailableException;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.validate.ValidationResult;
 
+import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static ru.yandex.practicum.filmorate.validate.FilmValidate.validateFilm;
+import static ru.yandex.practicum.filmorate.validate.FilmValidate.checkFilm;
 
 @Component
 @Slf4j
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> films = new HashMap<>();
-    private final Map<Long, Set<Long>> filmLikes = new HashMap<>();
-    private Long filmIdCounter = 1L;
+    private static final long MINUTE = 60_000;
+
+    //Упорядочены по id: страницы ?after=&limit= берутся через tailMap без обхода всего каталога
+    private final ConcurrentNavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    //Лайки фильма со временем постановки (для рейтингов за период)
+    private final LongAdjacency filmLikes = new LongAdjacency(true);
+    //Обратный индекс лайков: пользователь -> фильмы, для рекомендаций
+    private final LongAdjacency userLikes = new LongAdjacency();
+    private final FilmPopularityIndex popularity = new FilmPopularityIndex();
+    private final FilmAttributeIndex attributes = new FilmAttributeIndex();
+    //Изменения одного фильма (сам фильм и его лайки) идут под одной полосой блокировок
+    private final StripedLocks filmLocks = new StripedLocks(64);
+    private final AtomicLong filmIdCounter = new AtomicLong(1);
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+    private final SampledTimer createTimer;
+    private final SampledTimer updateTimer;
+    private final SampledTimer getAllTimer;
+    private final SampledTimer getPageTimer;
+    private final SampledTimer addLikeTimer;
+    private final SampledTimer removeLikeTimer;
+    private final SampledTimer popularTimer;
+    private final SampledTimer addLikesTimer;
+    private final SampledTimer createBatchTimer;
+    private final SampledTimer likedFilmsTimer;
+    private final SampledTimer findTimer;
+    private final Counter likesAdded;
+    private final Counter likesRemoved;
+    private final DistributionSummary likesPerFilm;
+    private final Clock clock;
+
+    //Без реестра (тесты, бенчмарки) метрики уходят в глобальный реестр, который без
+    //подключенных реестров ничего не хранит
+    public InMemoryFilmStorage() {
+        this(Clock.systemUTC());
+    }
+
+    public InMemoryFilmStorage(Clock clock) {
+        this(Metrics.globalRegistry, 1, clock);
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(MeterRegistry registry,
+                               @Value("${filmorate.metrics.storage-timer-sampling:16}") int timerSampling) {
+        this(registry, timerSampling, Clock.systemUTC());
+    }
+
+    public InMemoryFilmStorage(MeterRegistry registry, int timerSampling, Clock clock) {
+        this.clock = clock;
+        createTimer = StorageMeters.timer(registry, timerSampling, "films", "create");
+        updateTimer = StorageMeters.timer(registry, timerSampling, "films", "update");
+        getAllTimer = StorageMeters.timer(registry, timerSampling, "films", "getAll");
+        getPageTimer = StorageMeters.timer(registry, timerSampling, "films", "getPage");
+        addLikeTimer = StorageMeters.timer(registry, timerSampling, "films", "addLike");
+        removeLikeTimer = StorageMeters.timer(registry, timerSampling, "films", "removeLike");
+        popularTimer = StorageMeters.timer(registry, timerSampling, "films", "getPopular");
+        addLikesTimer = StorageMeters.timer(registry, timerSampling, "films", "addLikes");
+        createBatchTimer = StorageMeters.timer(registry, timerSampling, "films", "createBatch");
+        likedFilmsTimer = StorageMeters.timer(registry, timerSampling, "films", "getLikedFilms");
+        findTimer = StorageMeters.timer(registry, timerSampling, "films", "find");
+        likesAdded = StorageMeters.mutations(registry, "filmorate.likes", "added");
+        likesRemoved = StorageMeters.mutations(registry, "filmorate.likes", "removed");
+        likesPerFilm = StorageMeters.degrees(registry, "filmorate.likes.per.film");
+        Gauge.builder("filmorate.films.count", films, Map::size)
+                .register(registry);
+        Gauge.builder("filmorate.likes.count", filmLikes, LongAdjacency::edges)
+                .register(registry);
+    }
+
+    @Override
+    public void addListener(StorageListener listener) {
+        listeners.add(listener);
+    }
 
     @Override
     public ResponseEntity<?> createFilm(Film film) {
+        long start = createTimer.start();
         try {
-            validateFilm(film);
-            film.setId(filmIdCounter++);
-            films.put(film.getId(), film);
-            log.info("Добавлен фильм: {}", film);
+            //Отказ - заранее собранный ответ: некорректная запись не дороже корректной
+            ValidationResult validation = checkFilm(film);
+            if (!validation.isValid()) {
+                log.debug("Ошибка валидации при создании фильма: {}", validation.message());
+                return validation.response();
+            }
+            ensureWritable();
+            film.setId(filmIdCounter.getAndIncrement());
+            insert(film);
+            completed();
+            log.info("Добавлен фильм с id {}", film.getId());
             return new ResponseEntity<>(film, HttpStatus.CREATED);
-        } catch (ValidationException e) {
-            log.warn("Ошибка валидации при создании фильма: {}", e.getMessage());
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Неожиданная ошибка при создании фильма: {}", e.getMessage(), e);
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Внутренняя ошибка сервера");
-            return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+            return StorageErrors.INTERNAL_ERROR;
+        } finally {
+            createTimer.stop(start);
+        }
+    }
+
+    @Override
+    public List<String> createFilms(List<Film> batch) {
+        long start = createBatchTimer.start();
+        String[] errors = new String[batch.size()];
+        int valid = 0;
+        for (int i = 0; i < errors.length; i++) {
+            try {
+                errors[i] = checkFilm(batch.get(i)).message();
+            } catch (RuntimeException e) {
+                errors[i] = "Некорректные данные фильма.";
+            }
+            if (errors[i] == null) {
+                valid++;
+            }
+        }
+        ensureWritable();
+        //id выделяются одним блоком на всю пачку
+        long nextId = filmIdCounter.getAndAdd(valid);
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                Film film = batch.get(i);
+                film.setId(nextId++);
+                insert(film);
+            }
         }
+        completed();
+        createBatchTimer.stop(start);
+        log.debug("Добавлено фильмов пакетом: {}", valid);
+        return Arrays.asList(errors);
     }
 
     @Override
     public ResponseEntity<?> updateFilm(@RequestBody Film film) {
+        long start = updateTimer.start();
         try {
-            validateFilm(film);
-            if (films.containsKey(film.getId())) {
-                films.put(film.getId(), film);
-                log.info("Обновлен фильм: {}", film);
+            ValidationResult validation = checkFilm(film);
+            if (!validation.isValid()) {
+                log.debug("Ошибка валидации при обновлении фильма: {}", validation.message());
+                return validation.response();
+            }
+            ensureWritable();
+            //replace атомарен: фильм обновится только если он уже есть в хранилище
+            if (film.getId() != null && replaceFilm(film)) {
+                completed();
+                log.info("Обновлен фильм с id {}", film.getId());
                 return new ResponseEntity<>(film, HttpStatus.OK);
             } else {
-                String errorMessage = "Фильм с id " + film.getId() + " не найден.";
-                log.warn(errorMessage);
-                Map<String, String> errorResponse = new HashMap<>();
-                errorResponse.put("error", errorMessage);
-                return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
-            }
-        } catch (ValidationException e) {
-            log.warn("Ошибка валидации при обновлении фильма: {}", e.getMessage());
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+                log.warn("Фильм с id {} не найден.", film.getId());
+                return StorageErrors.FILM_NOT_FOUND;
+            }
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Неожиданная ошибка при обновлении фильма: {}", e.getMessage(), e);
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Внутренняя ошибка сервера");
-            return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+            return StorageErrors.INTERNAL_ERROR;
+        } finally {
+            updateTimer.stop(start);
         }
     }
 
     @Override
     public ResponseEntity<List<Film>> getAllFilms() {
-        log.info("Получен запрос на получение всех фильмов.");
-        List<Film> filmList = films.values().stream().collect(Collectors.toList());
+        log.debug("Получен запрос на получение всех фильмов.");
+        long start = getAllTimer.start();
+        List<Film> filmList = new ArrayList<>(films.values());
+        getAllTimer.stop(start);
         return new ResponseEntity<>(filmList, HttpStatus.OK);
     }
 
+    @Override
+    public List<Film> getFilms(Long after, int limit) {
+        long start = getPageTimer.start();
+        List<Film> page = Pages.first(after == null ? films : films.tailMap(after, false), limit);
+        getPageTimer.stop(start);
+        return page;
+    }
+
+    @Override
+    public List<Film> findFilms(FilmFilter filter, Long after, int limit) {
+        long start = findTimer.start();
+        long[] candidates = attributes.select(filter, limit, films.size());
+        //Ограничения @Positive в контроллере не проверяются: limit может прийти нулевым или отрицательным
+        List<Film> result = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        if (candidates == null) {
+            //Подходящих много: обходим каталог по id, пока не наберется страница
+            Iterator<Film> iterator = (after == null ? films : films.tailMap(after, false)).values().iterator();
+            while (result.size() < limit && iterator.hasNext()) {
+                Film film = iterator.next();
+                if (filter.matches(film)) {
+                    result.add(film);
+                }
+            }
+        } else {
+            int from = after == null ? 0 : LongSortedSet.indexAfter(candidates, candidates.length, after);
+            for (int i = from; i < candidates.length && result.size() < limit; i++) {
+                //Проверяем условие целиком: другие диапазоны и изменения после выбора кандидатов
+                Film film = films.get(candidates[i]);
+                if (film != null && filter.matches(film)) {
+                    result.add(film);
+                }
+            }
+        }
+        findTimer.stop(start);
+        log.debug("Отбор фильмов: {} кандидатов из индекса, найдено {}",
+                candidates == null ? "без" : candidates.length, result.size());
+        return result;
+    }
+
+    @Override
+    public Stream<Film> streamAllFilms() {
+        return films.values().stream();
+    }
+
+    @Override
+    public Flow.Publisher<Film> publishAllFilms() {
+        return new StreamPublisher<>(this::streamAllFilms);
+    }
+
     @Override
     public void addLike(Long filmId, Long userId) {
         if (!films.containsKey(filmId)) {
             throw new NotFoundException("Фильм с id " + filmId + " не найден.");
         }
-        //Если для фильма еще нет лайков, создаем новый set
-        filmLikes.computeIfAbsent(filmId, k -> new HashSet<>());
-        filmLikes.get(filmId).add(userId);
+        ensureWritable();
+        long start = addLikeTimer.start();
+        Lock lock = filmLocks.get(filmId);
+        lock.lock();
+        try {
+            int minute = currentMinute();
+            if (filmLikes.add(filmId, userId, minute)) {
+                userLikes.add(userId, filmId);
+                int likes = filmLikes.degree(filmId);
+                popularity.update(filmId, likes);
+                listeners.forEach(listener -> listener.likeAdded(filmId, userId, minute * MINUTE));
+                likesAdded.increment();
+                likesPerFilm.record(likes);
+            }
+        } finally {
+            lock.unlock();
+        }
+        completed();
+        addLikeTimer.stop(start);
     }
 
     @Override
@@ -92,25 +285,323 @@ public class InMemoryFilmStorage implements FilmStorage {
         if (!films.containsKey(filmId)) {
             throw new NotFoundException("Фильм с id " + filmId + " не найден.");
         }
-        //Если для фильма еще нет лайков, создаем новый set (на всякий случай)
-        filmLikes.computeIfAbsent(filmId, k -> new HashSet<>());
-        filmLikes.get(filmId).remove(userId);
+        ensureWritable();
+        long start = removeLikeTimer.start();
+        Lock lock = filmLocks.get(filmId);
+        lock.lock();
+        try {
+            int minute = filmLikes.removeTimed(filmId, userId);
+            if (minute != LongSortedSet.ABSENT) {
+                userLikes.remove(userId, filmId);
+                int likes = filmLikes.degree(filmId);
+                popularity.update(filmId, likes);
+                listeners.forEach(listener -> listener.likeRemoved(filmId, userId, minute * MINUTE));
+                likesRemoved.increment();
+                likesPerFilm.record(likes);
+            }
+        } finally {
+            lock.unlock();
+        }
+        completed();
+        removeLikeTimer.stop(start);
+    }
+
+    @Override
+    public List<BatchStatus> addLikes(List<FilmLike> likes, LongPredicate userExists) {
+        ensureWritable();
+        long start = addLikesTimer.start();
+        BatchStatus[] statuses = new BatchStatus[likes.size()];
+        //Группируем пары по фильму: блокировка и пересчет рейтинга - один раз на фильм
+        Map<Long, List<Integer>> byFilm = new HashMap<>();
+        for (int i = 0; i < statuses.length; i++) {
+            FilmLike like = likes.get(i);
+            if (like == null || like.getFilmId() == null || like.getUserId() == null) {
+                statuses[i] = BatchStatus.INVALID;
+            } else {
+                byFilm.computeIfAbsent(like.getFilmId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<Long, Boolean> knownUsers = new HashMap<>();
+        for (Map.Entry<Long, List<Integer>> group : byFilm.entrySet()) {
+            long filmId = group.getKey();
+            if (!films.containsKey(filmId)) {
+                group.getValue().forEach(i -> statuses[i] = BatchStatus.FILM_NOT_FOUND);
+                continue;
+            }
+            Lock lock = filmLocks.get(filmId);
+            lock.lock();
+            try {
+                boolean changed = false;
+                int minute = currentMinute();
+                for (int i : group.getValue()) {
+                    long userId = likes.get(i).getUserId();
+                    if (!knownUsers.computeIfAbsent(userId, userExists::test)) {
+                        statuses[i] = BatchStatus.USER_NOT_FOUND;
+                    } else if (filmLikes.add(filmId, userId, minute)) {
+                        userLikes.add(userId, filmId);
+                        statuses[i] = BatchStatus.APPLIED;
+                        listeners.forEach(listener -> listener.likeAdded(filmId, userId, minute * MINUTE));
+                        likesAdded.increment();
+                        changed = true;
+                    } else {
+                        statuses[i] = BatchStatus.UNCHANGED;
+                    }
+                }
+                if (changed) {
+                    int filmLikeCount = filmLikes.degree(filmId);
+                    popularity.update(filmId, filmLikeCount);
+                    likesPerFilm.record(filmLikeCount);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        completed();
+        addLikesTimer.stop(start);
+        return Arrays.asList(statuses);
     }
 
     @Override
     public List<Film> getPopularFilms(int count) {
-        return films.values().stream()
-                .sorted((f1, f2) -> Integer.compare(Optional.ofNullable(filmLikes.get(f2.getId())).map(Set::size).orElse(0),
-                        Optional.ofNullable(filmLikes.get(f1.getId())).map(Set::size).orElse(0)))
-                .limit(count)
+        //Берем первые count позиций из рейтинга, не сортируя весь каталог
+        long start = popularTimer.start();
+        List<Film> popular = popularity.top(count).stream()
+                .map(films::get)
                 .collect(Collectors.toList());
+        popularTimer.stop(start);
+        return popular;
+    }
+
+    @Override
+    public Flow.Publisher<Film> publishPopularFilms(int count) {
+        //Рейтинг обходится по мере спроса подписчика, без списка на count фильмов
+        return new StreamPublisher<>(() -> FilmPopularityIndex.films(popularity.iterator(), films::get, count));
+    }
+
+    @Override
+    public List<Film> getLikedFilms(long userId, Long after, int limit) {
+        //Страница берется из обратного индекса: стоимость зависит только от лайков пользователя
+        long start = likedFilmsTimer.start();
+        long[] filmIds = userLikes.page(userId, after == null ? Long.MIN_VALUE : after, limit);
+        List<Film> result = new ArrayList<>(filmIds.length);
+        for (long filmId : filmIds) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                result.add(film);
+            }
+        }
+        likedFilmsTimer.stop(start);
+        return result;
     }
 
     @Override
     public Film getFilmById(Long filmId) {
-        if (!films.containsKey(filmId)) {
+        Film film = films.get(filmId);
+        if (film == null) {
             throw new NotFoundException("Film with id " + filmId + " not found.");
         }
+        return film;
+    }
+
+    // id пользователей, лайкнувших фильм, по возрастанию
+    public long[] getLikeIds(long filmId) {
+        return filmLikes.get(filmId);
+    }
+
+    // id фильмов, лайкнутых пользователем, по возрастанию
+    public long[] getLikedFilmIds(long userId) {
+        return userLikes.get(userId);
+    }
+
+    // Фильм или null, без исключения - для сборки ответов из секций
+    Film findFilm(long filmId) {
         return films.get(filmId);
     }
+
+    // Рейтинг секции по убыванию лайков - для слияния рейтингов секций
+    Iterator<FilmPopularityIndex.Entry> ranking() {
+        return popularity.iterator();
+    }
+
+    int likeCount(long filmId) {
+        return filmLikes.degree(filmId);
+    }
+
+    int likedFilmCount(long userId) {
+        return userLikes.degree(userId);
+    }
+
+    Iterable<Long> usersWithLikes() {
+        return userLikes.keys();
+    }
+
+    // Восстановление с диска закончено: подписчики могут перестроить свое состояние
+    public void recovered() {
+        listeners.forEach(StorageListener::recovered);
+    }
+
+    // Забывает все фильмы и лайки перед загрузкой снимка поверх прежнего состояния (повторная
+    // синхронизация реплики). Id не сбрасываются. Подписчики узнают об этом из recovered()
+    public void clear() {
+        films.clear();
+        filmLikes.clear();
+        userLikes.clear();
+        popularity.clear();
+        attributes.clear();
+    }
+
+    // Применение уже случившихся изменений (восстановление с диска):
+    // без валидации и без уведомления подписчиков
+    public void replayFilm(Film film) {
+        replayFilm(film, false);
+    }
+
+    // Изменения ведущего узла на реплике: как при восстановлении, но с уведомлением подписчиков,
+    // чтобы поиск, версии для ETag и кэш ответов реплики следовали за данными
+    public void applyFilm(Film film) {
+        replayFilm(film, true);
+    }
+
+    // Массовая загрузка лайков фильма из снимка: userIds отсортированы и без повторов
+    public void loadLikes(long filmId, long[] userIds) {
+        Lock lock = filmLocks.get(filmId);
+        lock.lock();
+        try {
+            for (long userId : filmLikes.get(filmId)) {
+                userLikes.remove(userId, filmId);
+            }
+            filmLikes.put(filmId, userIds);
+            for (long userId : userIds) {
+                userLikes.add(userId, filmId);
+            }
+            if (films.containsKey(filmId)) {
+                popularity.update(filmId, userIds.length);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void replayLike(long filmId, long userId) {
+        replayLike(filmId, userId, false);
+    }
+
+    public void applyLike(long filmId, long userId) {
+        replayLike(filmId, userId, true);
+    }
+
+    public void replayLikeRemoval(long filmId, long userId) {
+        replayLikeRemoval(filmId, userId, false);
+    }
+
+    public void applyLikeRemoval(long filmId, long userId) {
+        replayLikeRemoval(filmId, userId, true);
+    }
+
+    //Время лайка хранится в минутах эпохи - int рядом со связью
+    private int currentMinute() {
+        return (int) (clock.millis() / MINUTE);
+    }
+
+    // Подписчики могут отказать в записи до ее начала
+    private void ensureWritable() {
+        listeners.forEach(StorageListener::ensureWritable);
+    }
+
+    // Конец операции записи для подписчиков
+    private void completed() {
+        listeners.forEach(StorageListener::writeCompleted);
+    }
+
+    private void insert(Film film) {
+        Lock lock = filmLocks.get(film.getId());
+        lock.lock();
+        try {
+            films.put(film.getId(), film);
+            popularity.update(film.getId(), 0);
+            attributes.update(film);
+            listeners.forEach(listener -> listener.filmSaved(film));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayFilm(Film film, boolean notify) {
+        Lock lock = filmLocks.get(film.getId());
+        lock.lock();
+        try {
+            films.put(film.getId(), film);
+            popularity.update(film.getId(), filmLikes.degree(film.getId()));
+            attributes.update(film);
+            if (notify) {
+                listeners.forEach(listener -> listener.filmSaved(film));
+            }
+        } finally {
+            lock.unlock();
+        }
+        filmIdCounter.accumulateAndGet(film.getId() + 1, Math::max);
+        if (notify) {
+            completed();
+        }
+    }
+
+    private void replayLike(long filmId, long userId, boolean notify) {
+        Lock lock = filmLocks.get(filmId);
+        lock.lock();
+        try {
+            //Журнал не хранит время лайков: у восстановленных оно неизвестно, на реплике - время применения
+            int minute = notify ? currentMinute() : LongSortedSet.NO_TIME;
+            if (filmLikes.add(filmId, userId, minute)) {
+                userLikes.add(userId, filmId);
+                if (films.containsKey(filmId)) {
+                    popularity.update(filmId, filmLikes.degree(filmId));
+                }
+                if (notify) {
+                    listeners.forEach(listener -> listener.likeAdded(filmId, userId, minute * MINUTE));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (notify) {
+            completed();
+        }
+    }
+
+    private void replayLikeRemoval(long filmId, long userId, boolean notify) {
+        Lock lock = filmLocks.get(filmId);
+        lock.lock();
+        try {
+            int minute = filmLikes.removeTimed(filmId, userId);
+            if (minute != LongSortedSet.ABSENT) {
+                userLikes.remove(userId, filmId);
+                if (films.containsKey(filmId)) {
+                    popularity.update(filmId, filmLikes.degree(filmId));
+                }
+                if (notify) {
+                    listeners.forEach(listener -> listener.likeRemoved(filmId, userId, minute * MINUTE));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (notify) {
+            completed();
+        }
+    }
+
+    private boolean replaceFilm(Film film) {
+        Lock lock = filmLocks.get(film.getId());
+        lock.lock();
+        try {
+            if (films.replace(film.getId(), film) == null) {
+                return false;
+            }
+            attributes.update(film);
+            listeners.forEach(listener -> listener.filmSaved(film));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
 }
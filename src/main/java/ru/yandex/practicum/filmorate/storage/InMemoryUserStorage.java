@@ -1,67 +1,189 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
-import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.validate.UserValidate;
+import ru.yandex.practicum.filmorate.validate.ValidationResult;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
 
 @Component
 @Slf4j
 public class InMemoryUserStorage implements UserStorage {
 
-    private final Map<Long, User> users = new HashMap<>();
-    private final Map<Long, Set<Long>> friends = new HashMap<>();
-    private Long userIdCounter = 1L;
+    //Упорядочены по id: страницы ?after=&limit= берутся через tailMap без обхода всех пользователей
+    private final ConcurrentNavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final LongAdjacency friends = new LongAdjacency();
+    //Изменения пользователя и его дружб идут под полосами блокировок по id
+    private final StripedLocks userLocks = new StripedLocks(64);
+    private final AtomicLong userIdCounter = new AtomicLong(1);
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+    private final SampledTimer createTimer;
+    private final SampledTimer updateTimer;
+    private final SampledTimer getAllTimer;
+    private final SampledTimer getPageTimer;
+    private final SampledTimer addFriendTimer;
+    private final SampledTimer removeFriendTimer;
+    private final SampledTimer getFriendsTimer;
+    private final SampledTimer commonFriendsTimer;
+    private final SampledTimer addFriendsTimer;
+    private final SampledTimer createBatchTimer;
+    private final Counter friendsAdded;
+    private final Counter friendsRemoved;
+    private final DistributionSummary friendsPerUser;
 
+    public InMemoryUserStorage() {
+        this(Metrics.globalRegistry, 1);
+    }
+
+    @Autowired
+    public InMemoryUserStorage(MeterRegistry registry,
+                               @Value("${filmorate.metrics.storage-timer-sampling:16}") int timerSampling) {
+        createTimer = StorageMeters.timer(registry, timerSampling, "users", "create");
+        updateTimer = StorageMeters.timer(registry, timerSampling, "users", "update");
+        getAllTimer = StorageMeters.timer(registry, timerSampling, "users", "getAll");
+        getPageTimer = StorageMeters.timer(registry, timerSampling, "users", "getPage");
+        addFriendTimer = StorageMeters.timer(registry, timerSampling, "users", "addFriend");
+        removeFriendTimer = StorageMeters.timer(registry, timerSampling, "users", "removeFriend");
+        getFriendsTimer = StorageMeters.timer(registry, timerSampling, "users", "getFriends");
+        commonFriendsTimer = StorageMeters.timer(registry, timerSampling, "users", "getCommonFriends");
+        addFriendsTimer = StorageMeters.timer(registry, timerSampling, "users", "addFriends");
+        createBatchTimer = StorageMeters.timer(registry, timerSampling, "users", "createBatch");
+        friendsAdded = StorageMeters.mutations(registry, "filmorate.friends", "added");
+        friendsRemoved = StorageMeters.mutations(registry, "filmorate.friends", "removed");
+        friendsPerUser = StorageMeters.degrees(registry, "filmorate.friends.per.user");
+        Gauge.builder("filmorate.users.count", users, Map::size)
+                .register(registry);
+        //Дружба хранится с обеих сторон
+        Gauge.builder("filmorate.friendships.count", friends, adjacency -> adjacency.edges() / 2)
+                .register(registry);
+    }
+
+    @Override
+    public void addListener(StorageListener listener) {
+        listeners.add(listener);
+    }
 
     @Override
     public ResponseEntity<?> createUser(User user) {
+        long start = createTimer.start();
         try {
-            UserValidate.validateUser(user);
-            user.setId(userIdCounter++);
-            users.put(user.getId(), user);
-            log.info("Создан пользователь: {}", user);
+            //Отказ - заранее собранный ответ: некорректная запись не дороже корректной
+            ValidationResult validation = UserValidate.checkUser(user);
+            if (!validation.isValid()) {
+                log.debug("Ошибка валидации при создании пользователя: {}", validation.message());
+                return validation.response();
+            }
+            ensureWritable();
+            user.setId(userIdCounter.getAndIncrement());
+            insert(user);
+            completed();
+            log.info("Создан пользователь с id {}", user.getId());
             return new ResponseEntity<>(user, HttpStatus.CREATED);
-        } catch (ValidationException e) {
-            log.error("Ошибка валидации при создании пользователя: {}", e.getMessage());
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        } finally {
+            createTimer.stop(start);
         }
     }
 
+    @Override
+    public List<String> createUsers(List<User> batch) {
+        long start = createBatchTimer.start();
+        String[] errors = new String[batch.size()];
+        int valid = 0;
+        for (int i = 0; i < errors.length; i++) {
+            try {
+                errors[i] = UserValidate.checkUser(batch.get(i)).message();
+            } catch (RuntimeException e) {
+                errors[i] = "Некорректные данные пользователя.";
+            }
+            if (errors[i] == null) {
+                valid++;
+            }
+        }
+        ensureWritable();
+        //id выделяются одним блоком на всю пачку
+        long nextId = userIdCounter.getAndAdd(valid);
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                User user = batch.get(i);
+                user.setId(nextId++);
+                insert(user);
+            }
+        }
+        completed();
+        createBatchTimer.stop(start);
+        log.debug("Добавлено пользователей пакетом: {}", valid);
+        return Arrays.asList(errors);
+    }
+
     @Override
     public ResponseEntity<?> updateUser(User user) {
+        long start = updateTimer.start();
         try {
-            UserValidate.validateUser(user);
-            if (!users.containsKey(user.getId())) {
+            ValidationResult validation = UserValidate.checkUser(user);
+            if (!validation.isValid()) {
+                log.debug("Ошибка валидации при обновлении пользователя: {}", validation.message());
+                return validation.response();
+            }
+            ensureWritable();
+            //replace атомарен: пользователь обновится только если он уже есть в хранилище
+            if (user.getId() == null || !replaceUser(user)) {
                 log.warn("Пользователь с id {} не найден.", user.getId());
-                Map<String, String> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Пользователь не найден");
-                return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+                return StorageErrors.USER_NOT_FOUND;
             }
-            users.put(user.getId(), user);
-            log.info("Обновляем пользователя: {}", user);
+            completed();
+            log.info("Обновлен пользователь с id {}", user.getId());
             return new ResponseEntity<>(user, HttpStatus.OK);
-        } catch (ValidationException e) {
-            log.error("Ошибка валидации при обновлении пользователя: {}", e.getMessage());
-            Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+        } finally {
+            updateTimer.stop(start);
         }
     }
 
     @Override
     public ResponseEntity<List<User>> getAllUsers() {
-        log.info("Запрос на получение списка всех пользователей.");
-        return new ResponseEntity<>(new ArrayList<>(users.values()), HttpStatus.OK);
+        log.debug("Запрос на получение списка всех пользователей.");
+        long start = getAllTimer.start();
+        List<User> userList = new ArrayList<>(users.values());
+        getAllTimer.stop(start);
+        return new ResponseEntity<>(userList, HttpStatus.OK);
+    }
+
+    @Override
+    public List<User> getUsers(Long after, int limit) {
+        long start = getPageTimer.start();
+        List<User> page = Pages.first(after == null ? users : users.tailMap(after, false), limit);
+        getPageTimer.stop(start);
+        return page;
+    }
+
+    @Override
+    public Stream<User> streamAllUsers() {
+        return users.values().stream();
+    }
+
+    @Override
+    public Flow.Publisher<User> publishAllUsers() {
+        return new StreamPublisher<>(this::streamAllUsers);
     }
 
 
@@ -73,10 +195,65 @@ public class InMemoryUserStorage implements UserStorage {
         if (!users.containsKey(friendId)) {
             throw new NotFoundException("Пользователь с id " + friendId + " не найден.");
         }
+        ensureWritable();
 
-        friends.computeIfAbsent(userId, k -> new HashSet<>()).add(friendId);
-        friends.computeIfAbsent(friendId, k -> new HashSet<>()).add(userId);
-        log.info("Пользователи {} и {} теперь друзья.", userId, friendId);
+        //Обе стороны дружбы меняются под одной парой блокировок, иначе параллельные
+        //добавление и удаление могут оставить дружбу только у одного из пользователей
+        long start = addFriendTimer.start();
+        userLocks.lockPair(userId, friendId);
+        try {
+            boolean added = friends.add(userId, friendId);
+            added |= friends.add(friendId, userId);
+            if (added) {
+                listeners.forEach(listener -> listener.friendAdded(userId, friendId));
+                friendsAdded.increment();
+                friendsPerUser.record(friends.degree(userId));
+                friendsPerUser.record(friends.degree(friendId));
+            }
+        } finally {
+            userLocks.unlockPair(userId, friendId);
+        }
+        completed();
+        addFriendTimer.stop(start);
+        log.debug("Пользователи {} и {} теперь друзья.", userId, friendId);
+    }
+
+    @Override
+    public List<BatchStatus> addFriends(List<Friendship> friendships) {
+        ensureWritable();
+        long start = addFriendsTimer.start();
+        List<BatchStatus> statuses = new ArrayList<>(friendships.size());
+        Map<Long, Boolean> knownUsers = new HashMap<>();
+        for (Friendship friendship : friendships) {
+            if (friendship == null || friendship.getUserId() == null || friendship.getFriendId() == null) {
+                statuses.add(BatchStatus.INVALID);
+                continue;
+            }
+            long userId = friendship.getUserId();
+            long friendId = friendship.getFriendId();
+            if (!knownUsers.computeIfAbsent(userId, users::containsKey)
+                    || !knownUsers.computeIfAbsent(friendId, users::containsKey)) {
+                statuses.add(BatchStatus.USER_NOT_FOUND);
+                continue;
+            }
+            userLocks.lockPair(userId, friendId);
+            try {
+                boolean added = friends.add(userId, friendId);
+                added |= friends.add(friendId, userId);
+                if (added) {
+                    listeners.forEach(listener -> listener.friendAdded(userId, friendId));
+                    friendsAdded.increment();
+                    friendsPerUser.record(friends.degree(userId));
+                    friendsPerUser.record(friends.degree(friendId));
+                }
+                statuses.add(added ? BatchStatus.APPLIED : BatchStatus.UNCHANGED);
+            } finally {
+                userLocks.unlockPair(userId, friendId);
+            }
+        }
+        completed();
+        addFriendsTimer.stop(start);
+        return statuses;
     }
 
     @Override
@@ -87,13 +264,24 @@ public class InMemoryUserStorage implements UserStorage {
         if (!users.containsKey(friendId)) {
             throw new NotFoundException("Пользователь с id " + friendId + " не найден.");
         }
-        if (friends.containsKey(userId)) {
-            friends.get(userId).remove(friendId);
-        }
-        if (friends.containsKey(friendId)) {
-            friends.get(friendId).remove(userId);
+        ensureWritable();
+        long start = removeFriendTimer.start();
+        userLocks.lockPair(userId, friendId);
+        try {
+            boolean removed = friends.remove(userId, friendId);
+            removed |= friends.remove(friendId, userId);
+            if (removed) {
+                listeners.forEach(listener -> listener.friendRemoved(userId, friendId));
+                friendsRemoved.increment();
+                friendsPerUser.record(friends.degree(userId));
+                friendsPerUser.record(friends.degree(friendId));
+            }
+        } finally {
+            userLocks.unlockPair(userId, friendId);
         }
-        log.info("Пользователи {} и {} больше не друзья.", userId, friendId);
+        completed();
+        removeFriendTimer.stop(start);
+        log.debug("Пользователи {} и {} больше не друзья.", userId, friendId);
     }
 
     @Override
@@ -101,25 +289,41 @@ public class InMemoryUserStorage implements UserStorage {
         if (!users.containsKey(userId)) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден.");
         }
-        Set<Long> friendIds = friends.getOrDefault(userId, Collections.emptySet());
-        return friendIds.stream()
-                .map(friendId -> users.get(friendId))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        long start = getFriendsTimer.start();
+        long[] friendIds = friends.get(userId);
+        List<User> result = new ArrayList<>(friendIds.length);
+        for (long friendId : friendIds) {
+            User friend = users.get(friendId);
+            if (friend != null) {
+                result.add(friend);
+            }
+        }
+        getFriendsTimer.stop(start);
+        return result;
     }
 
 
     @Override
     public List<User> getCommonFriends(Long userId, Long otherId) {
-        Set<Long> userFriends = friends.getOrDefault(userId, Collections.emptySet());
-        Set<Long> otherFriends = friends.getOrDefault(otherId, Collections.emptySet());
+        return getCommonFriends(userId, otherId, null, Integer.MAX_VALUE);
+    }
 
-        Set<Long> commonFriends = new HashSet<>(userFriends);
-        commonFriends.retainAll(otherFriends);
-        return commonFriends.stream()
-                .map(users::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherId, Long after, int limit) {
+        getUserById(userId);
+        getUserById(otherId);
+        //Пересекаем отсортированные id друзей напрямую, без промежуточных списков пользователей
+        long start = commonFriendsTimer.start();
+        long[] commonIds = friends.intersect(userId, otherId, after == null ? Long.MIN_VALUE : after, limit);
+        List<User> result = new ArrayList<>(commonIds.length);
+        for (long friendId : commonIds) {
+            User friend = users.get(friendId);
+            if (friend != null) {
+                result.add(friend);
+            }
+        }
+        commonFriendsTimer.stop(start);
+        return result;
     }
 
     @Override
@@ -131,4 +335,162 @@ public class InMemoryUserStorage implements UserStorage {
         }
         return user;
     }
+
+    @Override
+    public boolean containsUser(long id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public Flow.Publisher<User> publishFriends(long userId) {
+        if (!users.containsKey(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " не найден.");
+        }
+        //Копируются только id друзей, сами записи читаются по мере спроса
+        return new StreamPublisher<>(() -> Arrays.stream(friends.get(userId))
+                .mapToObj(users::get)
+                .filter(Objects::nonNull));
+    }
+
+    @Override
+    public long[] getFriendIds(long userId) {
+        return friends.get(userId);
+    }
+
+    int friendCount(long userId) {
+        return friends.degree(userId);
+    }
+
+    boolean areFriends(long userId, long friendId) {
+        return friends.contains(userId, friendId);
+    }
+
+    // Восстановление с диска закончено: подписчики могут перестроить свое состояние
+    public void recovered() {
+        listeners.forEach(StorageListener::recovered);
+    }
+
+    // Забывает всех пользователей и дружбы перед загрузкой снимка поверх прежнего состояния
+    // (повторная синхронизация реплики). Id не сбрасываются. Подписчики узнают об этом из recovered()
+    public void clear() {
+        users.clear();
+        friends.clear();
+    }
+
+    // Применение уже случившихся изменений (восстановление с диска):
+    // без валидации и без уведомления подписчиков
+    public void replayUser(User user) {
+        replayUser(user, false);
+    }
+
+    // Изменения ведущего узла на реплике: как при восстановлении, но с уведомлением подписчиков
+    public void applyUser(User user) {
+        replayUser(user, true);
+    }
+
+    // Массовая загрузка друзей из снимка: friendIds отсортированы и без повторов.
+    // Заполняет только сторону userId - в снимке хранятся списки обеих сторон
+    public void loadFriends(long userId, long[] friendIds) {
+        friends.put(userId, friendIds);
+    }
+
+    public void replayFriend(long userId, long friendId) {
+        replayFriend(userId, friendId, false);
+    }
+
+    public void applyFriend(long userId, long friendId) {
+        replayFriend(userId, friendId, true);
+    }
+
+    public void replayFriendRemoval(long userId, long friendId) {
+        replayFriendRemoval(userId, friendId, false);
+    }
+
+    public void applyFriendRemoval(long userId, long friendId) {
+        replayFriendRemoval(userId, friendId, true);
+    }
+
+    private void replayUser(User user, boolean notify) {
+        Lock lock = userLocks.get(user.getId());
+        lock.lock();
+        try {
+            users.put(user.getId(), user);
+            if (notify) {
+                listeners.forEach(listener -> listener.userSaved(user));
+            }
+        } finally {
+            lock.unlock();
+        }
+        userIdCounter.accumulateAndGet(user.getId() + 1, Math::max);
+        if (notify) {
+            completed();
+        }
+    }
+
+    private void replayFriend(long userId, long friendId, boolean notify) {
+        userLocks.lockPair(userId, friendId);
+        try {
+            boolean added = friends.add(userId, friendId);
+            added |= friends.add(friendId, userId);
+            if (added && notify) {
+                listeners.forEach(listener -> listener.friendAdded(userId, friendId));
+            }
+        } finally {
+            userLocks.unlockPair(userId, friendId);
+        }
+        if (notify) {
+            completed();
+        }
+    }
+
+    private void replayFriendRemoval(long userId, long friendId, boolean notify) {
+        userLocks.lockPair(userId, friendId);
+        try {
+            boolean removed = friends.remove(userId, friendId);
+            removed |= friends.remove(friendId, userId);
+            if (removed && notify) {
+                listeners.forEach(listener -> listener.friendRemoved(userId, friendId));
+            }
+        } finally {
+            userLocks.unlockPair(userId, friendId);
+        }
+        if (notify) {
+            completed();
+        }
+    }
+
+    // Подписчики могут отказать в записи до ее начала
+    private void ensureWritable() {
+        listeners.forEach(StorageListener::ensureWritable);
+    }
+
+    // Конец операции записи для подписчиков
+    private void completed() {
+        listeners.forEach(StorageListener::writeCompleted);
+    }
+
+    private void insert(User user) {
+        Lock lock = userLocks.get(user.getId());
+        lock.lock();
+        try {
+            users.put(user.getId(), user);
+            listeners.forEach(listener -> listener.userSaved(user));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean replaceUser(User user) {
+        Lock lock = userLocks.get(user.getId());
+        lock.lock();
+        try {
+            if (users.replace(user.getId(), user) == null) {
+                return false;
+            }
+            listeners.forEach(listener -> listener.userSaved(user));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
 }
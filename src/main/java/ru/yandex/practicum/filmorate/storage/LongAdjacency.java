@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Список смежности id -> множество id (лайки фильма, друзья пользователя)
+// на примитивных отсортированных массивах. Список с временем хранит для каждой связи
+// минуту ее добавления (время лайка).
+class LongAdjacency {
+
+    private final Map<Long, LongSortedSet> sets = new ConcurrentHashMap<>();
+    //Общее число связей - для метрик, чтобы не обходить все множества
+    private final LongAdder edges = new LongAdder();
+    private final boolean timed;
+
+    LongAdjacency() {
+        this(false);
+    }
+
+    LongAdjacency(boolean timed) {
+        this.timed = timed;
+    }
+
+    boolean add(long key, long value) {
+        return add(key, value, LongSortedSet.NO_TIME);
+    }
+
+    boolean add(long key, long value, int minute) {
+        boolean added = sets.computeIfAbsent(key, k -> new LongSortedSet(timed)).add(value, minute);
+        if (added) {
+            edges.increment();
+        }
+        return added;
+    }
+
+    // Заменяет соседей ключа отсортированным массивом без повторов (массовая загрузка)
+    void put(long key, long[] sorted) {
+        LongSortedSet previous = sets.put(key, new LongSortedSet(sorted, timed));
+        edges.add(sorted.length - (previous == null ? 0 : previous.size()));
+    }
+
+    void clear() {
+        sets.clear();
+        edges.reset();
+    }
+
+    boolean remove(long key, long value) {
+        return removeTimed(key, value) != LongSortedSet.ABSENT;
+    }
+
+    // Минута добавления удаленной связи; LongSortedSet.ABSENT, если связи не было
+    int removeTimed(long key, long value) {
+        LongSortedSet set = sets.get(key);
+        int minute = set == null ? LongSortedSet.ABSENT : set.removeTimed(value);
+        if (minute != LongSortedSet.ABSENT) {
+            edges.decrement();
+        }
+        return minute;
+    }
+
+    // Ключи, у которых есть (или были) связи
+    Iterable<Long> keys() {
+        return sets.keySet();
+    }
+
+    long edges() {
+        return edges.sum();
+    }
+
+    boolean contains(long key, long value) {
+        LongSortedSet set = sets.get(key);
+        return set != null && set.contains(value);
+    }
+
+    int degree(long key) {
+        LongSortedSet set = sets.get(key);
+        return set == null ? 0 : set.size();
+    }
+
+    // Отсортированная копия соседей; пустой массив, если связей нет
+    long[] get(long key) {
+        LongSortedSet set = sets.get(key);
+        return set == null ? LongSortedSet.EMPTY : set.toArray();
+    }
+
+    // Соседи ключа больше after, не более limit штук, по возрастанию
+    long[] page(long key, long after, int limit) {
+        LongSortedSet set = sets.get(key);
+        return set == null ? LongSortedSet.EMPTY : set.page(after, limit);
+    }
+
+    // Общие соседи двух ключей больше after, не более limit штук, по возрастанию
+    long[] intersect(long firstKey, long secondKey, long after, int limit) {
+        LongSortedSet first = sets.get(firstKey);
+        LongSortedSet second = sets.get(secondKey);
+        if (first == null || second == null) {
+            return LongSortedSet.EMPTY;
+        }
+        return LongSortedSet.intersect(first, second, after, limit);
+    }
+}
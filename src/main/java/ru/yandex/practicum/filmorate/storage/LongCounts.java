@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+// Счетчик id -> число на открытой адресации без упаковки в Long/Integer.
+// Ключ, значение которого опустилось до нуля, удаляется.
+// Не потокобезопасен: параллельные задачи считают в свои счетчики и затем сливают их.
+class LongCounts {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    LongCounts(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                counts[slot] += delta;
+                if (counts[slot] <= 0) {
+                    delete(slot);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (delta <= 0) {
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    void addAll(LongCounts other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != FREE) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Оставляет только limit ключей с наибольшими значениями
+    void retainTop(int limit) {
+        if (size <= limit) {
+            return;
+        }
+        long[] top = top(limit);
+        keys = new long[keys.length];
+        counts = new int[counts.length];
+        Arrays.fill(keys, FREE);
+        size = 0;
+        for (int i = 0; i < top.length; i += 2) {
+            add(top[i], (int) top[i + 1]);
+        }
+    }
+
+    // limit ключей с наибольшими значениями: по убыванию значения, при равенстве - по возрастанию id.
+    // Результат - пары [id, значение] подряд
+    long[] top(int limit) {
+        if (limit <= 0) {
+            return LongSortedSet.EMPTY;
+        }
+        PriorityQueue<long[]> heap = new PriorityQueue<>(Math.min(limit, size) + 1,
+                (a, b) -> a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(b[0], a[0]));
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == FREE) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(new long[]{keys[i], counts[i]});
+            } else if (counts[i] > heap.peek()[1] || counts[i] == heap.peek()[1] && keys[i] < heap.peek()[0]) {
+                heap.poll();
+                heap.add(new long[]{keys[i], counts[i]});
+            }
+        }
+        long[] result = new long[heap.size() * 2];
+        for (int i = heap.size() - 1; i >= 0; i--) {
+            long[] entry = heap.poll();
+            result[i * 2] = entry[0];
+            result[i * 2 + 1] = entry[1];
+        }
+        return result;
+    }
+
+    //Сдвигаем назад следующие элементы цепочки, чтобы поиск не обрывался на дыре
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        size--;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    //Id идут подряд, без перемешивания они легли бы длинными цепочками
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,266 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Компактное множество id: отсортированный long[] без упаковки в Long.
+// Одна связь занимает 8 байт (плюс запас емкости) вместо ~50 байт у HashSet<Long>.
+// Запись идет под write-lock, чтение - оптимистично, без захвата блокировки.
+// Множество с временем хранит рядом с каждым id минуту его добавления (еще 4 байта на связь).
+class LongSortedSet {
+
+    static final long[] EMPTY = new long[0];
+    // Время связи неизвестно (загружена с диска)
+    static final int NO_TIME = 0;
+    // Ответ removeTimed, если элемента не было
+    static final int ABSENT = -1;
+    private static final int[] NO_MINUTES = new int[0];
+
+    private static final int INITIAL_CAPACITY = 4;
+    // Во сколько раз один массив должен быть длиннее другого, чтобы галоп выгоднее слияния
+    private static final int GALLOP_RATIO = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] data = EMPTY;
+    //Минуты эпохи параллельно data; null у множеств без времени
+    private int[] minutes;
+    private int size;
+
+    LongSortedSet() {
+    }
+
+    LongSortedSet(boolean timed) {
+        this.minutes = timed ? NO_MINUTES : null;
+    }
+
+    // Множество поверх уже отсортированного массива без повторов; массив не копируется
+    LongSortedSet(long[] sorted) {
+        this.data = sorted;
+        this.size = sorted.length;
+    }
+
+    // То же с неизвестным временем у всех элементов
+    LongSortedSet(long[] sorted, boolean timed) {
+        this(sorted);
+        this.minutes = timed ? new int[sorted.length] : null;
+    }
+
+    boolean add(long value) {
+        return add(value, NO_TIME);
+    }
+
+    // minute - время добавления в минутах эпохи; у множества без времени не хранится
+    boolean add(long value, int minute) {
+        long stamp = lock.writeLock();
+        try {
+            int index = Arrays.binarySearch(data, 0, size, value);
+            if (index >= 0) {
+                return false;
+            }
+            int insertAt = -index - 1;
+            if (size == data.length) {
+                int capacity = grownCapacity();
+                data = Arrays.copyOf(data, capacity);
+                if (minutes != null) {
+                    minutes = Arrays.copyOf(minutes, capacity);
+                }
+            }
+            System.arraycopy(data, insertAt, data, insertAt + 1, size - insertAt);
+            data[insertAt] = value;
+            if (minutes != null) {
+                System.arraycopy(minutes, insertAt, minutes, insertAt + 1, size - insertAt);
+                minutes[insertAt] = minute;
+            }
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean remove(long value) {
+        return removeTimed(value) != ABSENT;
+    }
+
+    // Удаляет элемент и возвращает минуту его добавления (NO_TIME, если время не хранится
+    // или неизвестно); ABSENT, если элемента не было
+    int removeTimed(long value) {
+        long stamp = lock.writeLock();
+        try {
+            int index = Arrays.binarySearch(data, 0, size, value);
+            if (index < 0) {
+                return ABSENT;
+            }
+            int minute = minutes == null ? NO_TIME : minutes[index];
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+            if (minutes != null) {
+                System.arraycopy(minutes, index + 1, minutes, index, size - index - 1);
+            }
+            size--;
+            //Отдаем память, если множество сильно сократилось
+            if (data.length > INITIAL_CAPACITY && size < data.length / 4) {
+                int capacity = Math.max(INITIAL_CAPACITY, data.length / 2);
+                data = Arrays.copyOf(data, capacity);
+                if (minutes != null) {
+                    minutes = Arrays.copyOf(minutes, capacity);
+                }
+            }
+            return minute;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean contains(long value) {
+        long stamp = lock.tryOptimisticRead();
+        long[] snapshot = data;
+        int length = size;
+        if (length <= snapshot.length) {
+            boolean found = Arrays.binarySearch(snapshot, 0, length, value) >= 0;
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return Arrays.binarySearch(data, 0, size, value) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.tryOptimisticRead();
+        int length = size;
+        if (lock.validate(stamp)) {
+            return length;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Копия содержимого в порядке возрастания
+    long[] toArray() {
+        long stamp = lock.tryOptimisticRead();
+        long[] snapshot = data;
+        int length = size;
+        if (length <= snapshot.length) {
+            long[] copy = length == 0 ? EMPTY : Arrays.copyOf(snapshot, length);
+            if (lock.validate(stamp)) {
+                return copy;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return size == 0 ? EMPTY : Arrays.copyOf(data, size);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Элементы больше after, не более limit штук, по возрастанию - без копирования всего множества
+    long[] page(long after, int limit) {
+        long stamp = lock.tryOptimisticRead();
+        long[] snapshot = data;
+        int length = size;
+        if (length <= snapshot.length) {
+            long[] result = page(snapshot, length, after, limit);
+            if (lock.validate(stamp)) {
+                return result;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return page(data, size, after, limit);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static long[] page(long[] sorted, int size, long after, int limit) {
+        int from = indexAfter(sorted, size, after);
+        int to = (int) Math.min(size, (long) from + limit);
+        return from >= to ? EMPTY : Arrays.copyOfRange(sorted, from, to);
+    }
+
+    // Общие элементы двух множеств больше after, не более limit штук, по возрастанию.
+    // Считается прямо по внутренним массивам под оптимистичным чтением, без их копирования;
+    // если во время подсчета было изменение, повторяем на копиях.
+    static long[] intersect(LongSortedSet first, LongSortedSet second, long after, int limit) {
+        long firstStamp = first.lock.tryOptimisticRead();
+        long secondStamp = second.lock.tryOptimisticRead();
+        long[] firstData = first.data;
+        int firstSize = first.size;
+        long[] secondData = second.data;
+        int secondSize = second.size;
+        if (firstSize <= firstData.length && secondSize <= secondData.length) {
+            long[] result = intersect(firstData, firstSize, secondData, secondSize, after, limit);
+            if (first.lock.validate(firstStamp) && second.lock.validate(secondStamp)) {
+                return result;
+            }
+        }
+        long[] firstCopy = first.toArray();
+        long[] secondCopy = second.toArray();
+        return intersect(firstCopy, firstCopy.length, secondCopy, secondCopy.length, after, limit);
+    }
+
+    // Пересечение отсортированных массивов. Если один намного длиннее другого, ищем в нем
+    // галопом (экспоненциальный поиск), иначе идем обычным слиянием.
+    static long[] intersect(long[] first, int firstSize, long[] second, int secondSize, long after, int limit) {
+        boolean firstIsSmall = firstSize <= secondSize;
+        long[] small = firstIsSmall ? first : second;
+        long[] large = firstIsSmall ? second : first;
+        int smallSize = firstIsSmall ? firstSize : secondSize;
+        int largeSize = firstIsSmall ? secondSize : firstSize;
+        int i = indexAfter(small, smallSize, after);
+        int j = indexAfter(large, largeSize, after);
+        long[] result = new long[Math.max(0, Math.min(limit, smallSize - i))];
+        int found = 0;
+        boolean gallop = (long) smallSize * GALLOP_RATIO < largeSize;
+        while (found < result.length && i < smallSize && j < largeSize) {
+            long value = small[i];
+            if (gallop) {
+                j = gallop(large, j, largeSize, value);
+                if (j < largeSize && large[j] == value) {
+                    result[found++] = value;
+                    j++;
+                }
+                i++;
+            } else if (value < large[j]) {
+                i++;
+            } else if (value > large[j]) {
+                j++;
+            } else {
+                result[found++] = value;
+                i++;
+                j++;
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+
+    // Индекс первого элемента больше after
+    static int indexAfter(long[] sorted, int size, long after) {
+        int index = Arrays.binarySearch(sorted, 0, size, after);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    // Индекс первого элемента не меньше value начиная с from: шаги 1, 2, 4, ... и бинарный поиск в последнем
+    private static int gallop(long[] sorted, int from, int size, long value) {
+        int bound = 1;
+        while (from + bound < size && sorted[from + bound] < value) {
+            bound <<= 1;
+        }
+        int index = Arrays.binarySearch(sorted, from + (bound >> 1), Math.min(from + bound + 1, size), value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // Рост в 1.5 раза: меньше перерасход памяти, чем при удвоении
+    private int grownCapacity() {
+        return Math.max(INITIAL_CAPACITY, data.length + (data.length >> 1));
+    }
+}
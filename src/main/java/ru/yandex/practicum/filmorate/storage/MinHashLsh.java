@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+// MinHash-подписи множеств лайкнувших фильм пользователей и LSH-корзины по полосам подписи.
+// Доля совпавших позиций двух подписей оценивает меру Жаккара множеств, а фильмы
+// с одинаковой полосой попадают в одну корзину - кандидаты ищутся без перебора всех фильмов.
+// Подпись неизменяема: при изменении публикуется новый массив, чтение идет без блокировок.
+// Изменения одного фильма должны приходить последовательно (под блокировкой фильма).
+class MinHashLsh {
+
+    private static final int HASHES = 64;
+    private static final int ROWS = 4;
+    private static final int BANDS = HASHES / ROWS;
+
+    private final long[] seeds = new long[HASHES];
+    private final Map<Long, int[]> signatures = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> buckets = new ConcurrentHashMap<>();
+
+    MinHashLsh() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < HASHES; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    void clear() {
+        signatures.clear();
+        buckets.clear();
+    }
+
+    boolean contains(long filmId) {
+        return signatures.containsKey(filmId);
+    }
+
+    // Подпись по полному множеству пользователей
+    void put(long filmId, long[] userIds) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long userId : userIds) {
+            for (int i = 0; i < HASHES; i++) {
+                signature[i] = Math.min(signature[i], hash(i, userId));
+            }
+        }
+        publish(filmId, signatures.get(filmId), signature);
+    }
+
+    void add(long filmId, long userId) {
+        int[] signature = signatures.get(filmId);
+        int[] next = null;
+        for (int i = 0; i < HASHES; i++) {
+            int hash = hash(i, userId);
+            if (hash < signature[i]) {
+                if (next == null) {
+                    next = signature.clone();
+                }
+                next[i] = hash;
+            }
+        }
+        if (next != null) {
+            publish(filmId, signature, next);
+        }
+    }
+
+    // Удаление пользователя не меняет подпись, если он не был ни одним из минимумов;
+    // иначе подпись нужно пересчитать по оставшимся пользователям
+    boolean affectedByRemoval(long filmId, long userId) {
+        int[] signature = signatures.get(filmId);
+        for (int i = 0; i < HASHES; i++) {
+            if (hash(i, userId) == signature[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void remove(long filmId) {
+        int[] signature = signatures.remove(filmId);
+        if (signature != null) {
+            for (int band = 0; band < BANDS; band++) {
+                unbucket(bandKey(signature, band), filmId);
+            }
+        }
+    }
+
+    // Фильмы, совпавшие с данным хотя бы в одной полосе
+    Set<Long> candidates(long filmId) {
+        int[] signature = signatures.get(filmId);
+        Set<Long> candidates = new HashSet<>();
+        if (signature == null) {
+            return candidates;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            Set<Long> bucket = buckets.get(bandKey(signature, band));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        candidates.remove(filmId);
+        return candidates;
+    }
+
+    double jaccard(long firstId, long secondId) {
+        int[] first = signatures.get(firstId);
+        int[] second = signatures.get(secondId);
+        if (first == null || second == null) {
+            return 0;
+        }
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (first[i] == second[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private void publish(long filmId, int[] previous, int[] signature) {
+        signatures.put(filmId, signature);
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(signature, band);
+            if (previous != null) {
+                long previousKey = bandKey(previous, band);
+                if (previousKey == key) {
+                    continue;
+                }
+                unbucket(previousKey, filmId);
+            }
+            //Добавляем внутри compute: иначе параллельный unbucket мог бы выбросить пустую корзину
+            buckets.compute(key, (k, bucket) -> {
+                Set<Long> target = bucket == null ? ConcurrentHashMap.newKeySet() : bucket;
+                target.add(filmId);
+                return target;
+            });
+        }
+    }
+
+    private void unbucket(long key, long filmId) {
+        buckets.computeIfPresent(key, (k, bucket) -> {
+            bucket.remove(filmId);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    //Номер полосы входит в ключ, чтобы одинаковые значения разных полос не смешивались
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[row];
+        }
+        return key;
+    }
+
+    private int hash(int i, long userId) {
+        long h = (userId ^ seeds[i]) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return (int) (h >>> 32);
+    }
+}
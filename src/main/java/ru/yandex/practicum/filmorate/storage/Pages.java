@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+final class Pages {
+
+    private Pages() {
+    }
+
+    // Первые limit значений упорядоченной карты; дальше карта не обходится
+    static <T> List<T> first(Map<Long, T> source, int limit) {
+        List<T> result = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        Iterator<T> iterator = source.values().iterator();
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Таймер, замеряющий только каждый sampling-й вызов в среднем. Запись в таймер с перцентилями
+// стоит ~0.2 мкс - сопоставимо с самими операциями хранилища, а на выборке перцентили те же.
+// Счетчик вызовов у такого таймера тоже выборочный; точные количества - у http.server.requests.
+final class SampledTimer {
+
+    private final Timer timer;
+    private final int sampling;
+
+    SampledTimer(Timer timer, int sampling) {
+        this.timer = timer;
+        this.sampling = Math.max(1, sampling);
+    }
+
+    // Отметка начала или 0, если этот вызов не замеряется
+    long start() {
+        if (sampling > 1 && ThreadLocalRandom.current().nextInt(sampling) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    void stop(long start) {
+        if (start != 0) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
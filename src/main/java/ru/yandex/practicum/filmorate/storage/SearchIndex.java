@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+// Поиск по фильмам (название, описание) и пользователям (логин, имя).
+// Индексы обновляются подписчиками хранилищ при создании и изменении записей,
+// после восстановления с диска или загрузки снимка реплики собираются заново.
+@Component
+public class SearchIndex {
+
+    private final TextIndex films = new TextIndex();
+    private final TextIndex users = new TextIndex();
+
+    public SearchIndex(FilmStorage filmStorage, UserStorage userStorage) {
+        filmStorage.addListener(new StorageListener() {
+            @Override
+            public void filmSaved(Film film) {
+                indexFilm(film);
+            }
+
+            @Override
+            public void recovered() {
+                films.clear();
+                filmStorage.streamAllFilms()
+                        .forEach(SearchIndex.this::indexFilm);
+            }
+        });
+        userStorage.addListener(new StorageListener() {
+            @Override
+            public void userSaved(User user) {
+                indexUser(user);
+            }
+
+            @Override
+            public void recovered() {
+                users.clear();
+                userStorage.streamAllUsers()
+                        .forEach(SearchIndex.this::indexUser);
+            }
+        });
+    }
+
+    // id фильмов: сначала совпавшие по названию, затем по описанию; последнее слово - начало слова
+    public long[] searchFilms(String query, int offset, int limit) {
+        return films.search(query, offset, limit);
+    }
+
+    // id пользователей: сначала совпавшие по логину и имени; последнее слово - начало слова
+    public long[] searchUsers(String query, int offset, int limit) {
+        return users.search(query, offset, limit);
+    }
+
+    private void indexFilm(Film film) {
+        films.put(film.getId(), film.getName(), film.getDescription());
+    }
+
+    private void indexUser(User user) {
+        users.put(user.getId(), user.getName() == null ? user.getLogin() : user.getLogin() + " " + user.getName(), null);
+    }
+}
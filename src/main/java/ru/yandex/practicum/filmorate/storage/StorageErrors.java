@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+
+// Ответы об ошибках с постоянным текстом собраны один раз: они неизменяемые и общие для всех запросов
+final class StorageErrors {
+
+    static final ResponseEntity<Map<String, String>> INTERNAL_ERROR =
+            new ResponseEntity<>(Map.of("error", "Внутренняя ошибка сервера"), HttpStatus.INTERNAL_SERVER_ERROR);
+    static final ResponseEntity<Map<String, String>> FILM_NOT_FOUND =
+            new ResponseEntity<>(Map.of("error", "Фильм не найден"), HttpStatus.NOT_FOUND);
+    static final ResponseEntity<Map<String, String>> USER_NOT_FOUND =
+            new ResponseEntity<>(Map.of("error", "Пользователь не найден"), HttpStatus.NOT_FOUND);
+
+    private StorageErrors() {
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+// Подписчик на изменения хранилищ (журнал, реплики и т.п.).
+// Вызывается синхронно сразу после изменения, под блокировкой изменяемой записи,
+// поэтому изменения одного фильма/пользователя приходят в порядке применения.
+// Реализации должны работать быстро и не бросать исключений; ждать (например, диска)
+// можно только в writeCompleted, отказать в записи - только в ensureWritable и writeCompleted.
+public interface StorageListener {
+
+    // Вызывается перед операцией записи клиента, до блокировок и до каких-либо изменений.
+    // StorageUnavailableException отсюда отклоняет запись, ничего не изменив
+    default void ensureWritable() {
+    }
+
+    default void filmSaved(Film film) {
+    }
+
+    default void likeAdded(long filmId, long userId) {
+    }
+
+    // То же со временем лайка (мс эпохи с точностью до минуты), под которым хранилище его запомнило
+    default void likeAdded(long filmId, long userId, long likedAt) {
+        likeAdded(filmId, userId);
+    }
+
+    default void likeRemoved(long filmId, long userId) {
+    }
+
+    // То же со временем, когда снятый лайк был поставлен; 0 - время неизвестно
+    // (лайк восстановлен с диска или загружен из снимка)
+    default void likeRemoved(long filmId, long userId, long likedAt) {
+        likeRemoved(filmId, userId);
+    }
+
+    default void userSaved(User user) {
+    }
+
+    default void friendAdded(long userId, long friendId) {
+    }
+
+    default void friendRemoved(long userId, long friendId) {
+    }
+
+    // Операция записи закончена, все подписчики получили ее изменения и блокировки хранилища
+    // отпущены; вызывается в потоке операции для записей клиентов и для изменений ведущего
+    // на реплике. Исключение отсюда доходит до клиента как отказ в записи
+    default void writeCompleted() {
+    }
+
+    // Хранилище восстановлено с диска без уведомлений об отдельных изменениях
+    default void recovered() {
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Метрики хранилищ. Перцентили таймеров и распределений настраиваются через
+// management.metrics.distribution.percentiles.filmorate в application.properties.
+final class StorageMeters {
+
+    private StorageMeters() {
+    }
+
+    // Время операции хранилища на выборке вызовов: filmorate.storage{storage, operation}
+    static SampledTimer timer(MeterRegistry registry, int sampling, String storage, String operation) {
+        Timer timer = Timer.builder("filmorate.storage")
+                .tag("storage", storage)
+                .tag("operation", operation)
+                .register(registry);
+        return new SampledTimer(timer, sampling);
+    }
+
+    // Число изменений связей: filmorate.likes{action}, filmorate.friends{action}
+    static Counter mutations(MeterRegistry registry, String name, String action) {
+        return Counter.builder(name)
+                .tag("action", action)
+                .register(registry);
+    }
+
+    // Размеры множеств связей в момент их изменения (сколько лайков у фильма, друзей у пользователя)
+    static DistributionSummary degrees(MeterRegistry registry, String name) {
+        return DistributionSummary.builder(name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Издатель поверх ленивого потока хранилища: записи читаются только в пределах запрошенного
+// подписчиком (request(n)), поэтому медленный подписчик не заставляет хранилище собирать
+// весь список в памяти. Поток открывается при первом запросе, у каждого подписчика свой.
+// Записи отдаются в потоке, вызвавшем request; повторный request из onNext не углубляет стек,
+// а добавляет спрос текущему циклу выдачи.
+public final class StreamPublisher<T> implements Flow.Publisher<T> {
+
+    private final Supplier<Stream<T>> source;
+
+    public StreamPublisher(Supplier<Stream<T>> source) {
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new PullSubscription<>(subscriber, source));
+    }
+
+    private static final class PullSubscription<T> implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Supplier<Stream<T>> source;
+        //Невыданный спрос; переход из нуля означает, что выдачей занимается вызвавший поток
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled;
+        private Stream<T> stream;
+        private Iterator<T> iterator;
+
+        private PullSubscription(Flow.Subscriber<? super T> subscriber, Supplier<Stream<T>> source) {
+            this.subscriber = subscriber;
+            this.source = source;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Запрошено не больше нуля записей: " + n));
+                n = 1;
+            }
+            if (addDemand(n) == 0) {
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            //Если выдача не идет, поток закрывает сам отменивший
+            if (addDemand(1) == 0) {
+                drain();
+            }
+        }
+
+        private long addDemand(long n) {
+            return demand.getAndAccumulate(n, (current, added) -> {
+                long sum = current + added;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+        }
+
+        private void drain() {
+            long requested = demand.get();
+            while (true) {
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (cancelled) {
+                        close();
+                        return;
+                    }
+                    try {
+                        if (iterator == null) {
+                            stream = source.get();
+                            iterator = stream.iterator();
+                        }
+                        if (!iterator.hasNext()) {
+                            cancelled = true;
+                            close();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(iterator.next());
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        close();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    emitted++;
+                }
+                if (cancelled) {
+                    close();
+                    return;
+                }
+                //Без ограничения спроса счетчик не уменьшается
+                requested = requested == Long.MAX_VALUE ? Long.MAX_VALUE : demand.addAndGet(-emitted);
+                if (requested == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void close() {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Набор блокировок, поделенный на полосы по id: записи по разным фильмам/пользователям
+// не ждут друг друга, а чтение в хранилищах идет вообще без блокировок.
+class StripedLocks {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    StripedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    Lock get(long id) {
+        return stripes[index(id)];
+    }
+
+    // Захватывает полосы двух id всегда в одном порядке, чтобы не было взаимной блокировки
+    void lockPair(long first, long second) {
+        int a = index(first);
+        int b = index(second);
+        stripes[Math.min(a, b)].lock();
+        if (a != b) {
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    void unlockPair(long first, long second) {
+        int a = index(first);
+        int b = index(second);
+        if (a != b) {
+            stripes[Math.max(a, b)].unlock();
+        }
+        stripes[Math.min(a, b)].unlock();
+    }
+
+    private int index(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
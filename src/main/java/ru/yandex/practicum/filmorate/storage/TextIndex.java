@@ -0,0 +1,316 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongPredicate;
+
+// Инвертированный индекс по двум полям записи: основному (название фильма, логин и имя
+// пользователя) и дополнительному (описание). Слово -> отсортированные id записей.
+// Для основного поля индексируются и начала слов (до MAX_PREFIX символов) - по ним работает
+// автодополнение последнего слова запроса. В дополнительном поле начало слова ищется
+// по упорядоченному словарю: берутся не больше MAX_EXPANSIONS слов с этим началом.
+// Запрос находит записи, где есть все слова;
+// сначала идут записи, у которых все слова нашлись в основном поле, затем остальные,
+// внутри каждой группы - по возрастанию id.
+// Изменения одной записи должны приходить последовательно (под блокировкой записи).
+class TextIndex {
+
+    private static final int MAX_PREFIX = 12;
+    private static final int MAX_EXPANSIONS = 64;
+
+    private final Map<String, LongSortedSet> primaryWords = new ConcurrentHashMap<>();
+    private final Map<String, LongSortedSet> primaryPrefixes = new ConcurrentHashMap<>();
+    private final NavigableMap<String, LongSortedSet> secondaryWords = new ConcurrentSkipListMap<>();
+    //Прошлые тексты записи - чтобы при изменении убрать ее из больше не подходящих слов.
+    //Для фильмов это ссылки на строки самой записи, а не копии
+    private final Map<Long, String[]> texts = new ConcurrentHashMap<>();
+
+    void put(long id, String primary, String secondary) {
+        String[] previous = texts.put(id, new String[]{primary, secondary});
+        Set<String> oldPrimary = previous == null ? Set.of() : words(previous[0]);
+        Set<String> oldSecondary = previous == null ? Set.of() : words(previous[1]);
+        Set<String> newPrimary = words(primary);
+        Set<String> newSecondary = words(secondary);
+        update(primaryWords, id, oldPrimary, newPrimary);
+        update(primaryPrefixes, id, prefixes(oldPrimary), prefixes(newPrimary));
+        update(secondaryWords, id, oldSecondary, newSecondary);
+    }
+
+    void clear() {
+        texts.clear();
+        primaryWords.clear();
+        primaryPrefixes.clear();
+        secondaryWords.clear();
+    }
+
+    // id найденных записей в порядке выдачи, начиная с offset, не более limit.
+    // Списки id не копируются целиком: курсоры читают их блоками и перескакивают вперед,
+    // поэтому стоимость зависит от размера страницы и редкости слов, а не от размера каталога
+    // offset и limit приходят из запроса без проверки (@Positive в контроллере не применяется):
+    // отрицательный offset считается нулем, непустая выдача только при положительном limit
+    long[] search(String query, int offset, int limit) {
+        List<String> terms = tokens(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return LongSortedSet.EMPTY;
+        }
+        offset = Math.max(0, offset);
+        //Последнее слово может быть недописанным, если запрос не кончается пробелом или знаком
+        boolean lastIsPrefix = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        Cursor[] primary = new Cursor[terms.size()];
+        Cursor[] any = new Cursor[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            boolean prefix = lastIsPrefix && t == terms.size() - 1;
+            primary[t] = prefix ? primaryPrefixCursor(term) : cursor(primaryWords.get(term));
+            any[t] = new UnionCursor(prefix
+                    ? new Cursor[]{primaryPrefixCursor(term), secondaryPrefixCursor(term)}
+                    : new Cursor[]{cursor(primaryWords.get(term)), cursor(secondaryWords.get(term))});
+        }
+        long[] page = new long[Math.min(limit, 1024)];
+        int found = 0;
+        long skipped = 0;
+        Cursor primaryMatches = new IntersectionCursor(primary);
+        for (long id = primaryMatches.next(Long.MIN_VALUE); id != Cursor.NONE && found < limit;
+             id = primaryMatches.next(id)) {
+            if (skipped++ >= offset) {
+                page = append(page, found++, id);
+            }
+        }
+        Cursor anyMatches = new IntersectionCursor(any);
+        for (long id = anyMatches.next(Long.MIN_VALUE); id != Cursor.NONE && found < limit; id = anyMatches.next(id)) {
+            if (!containsAll(primary, id) && skipped++ >= offset) {
+                page = append(page, found++, id);
+            }
+        }
+        return Arrays.copyOf(page, found);
+    }
+
+    // Слова текста в порядке следования: буквы и цифры в нижнем регистре, "ё" приравнена к "е"
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c == 'ё' ? 'е' : c);
+            } else if (word.length() > 0) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static Set<String> words(String text) {
+        return new HashSet<>(tokens(text));
+    }
+
+    private Cursor primaryPrefixCursor(String term) {
+        if (term.length() <= MAX_PREFIX) {
+            return cursor(primaryPrefixes.get(term));
+        }
+        //Длинное начало слова: кандидаты по первым MAX_PREFIX символам, дальше проверка по тексту
+        return new FilterCursor(cursor(primaryPrefixes.get(term.substring(0, MAX_PREFIX))), id -> {
+            String[] text = texts.get(id);
+            return text != null && tokens(text[0]).stream().anyMatch(word -> word.startsWith(term));
+        });
+    }
+
+    private Cursor secondaryPrefixCursor(String term) {
+        List<Cursor> parts = new ArrayList<>();
+        for (LongSortedSet ids : secondaryWords.subMap(term, term + Character.MAX_VALUE).values()) {
+            if (parts.size() == MAX_EXPANSIONS) {
+                break;
+            }
+            parts.add(new SetCursor(ids));
+        }
+        return new UnionCursor(parts.toArray(new Cursor[0]));
+    }
+
+    private static Set<String> prefixes(Set<String> words) {
+        Set<String> prefixes = new HashSet<>();
+        for (String word : words) {
+            for (int length = 1; length <= Math.min(word.length(), MAX_PREFIX); length++) {
+                prefixes.add(word.substring(0, length));
+            }
+        }
+        return prefixes;
+    }
+
+    private static void update(Map<String, LongSortedSet> index, long id, Set<String> before, Set<String> after) {
+        for (String word : before) {
+            if (!after.contains(word)) {
+                LongSortedSet ids = index.get(word);
+                if (ids != null) {
+                    ids.remove(id);
+                }
+            }
+        }
+        for (String word : after) {
+            if (!before.contains(word)) {
+                index.computeIfAbsent(word, w -> new LongSortedSet()).add(id);
+            }
+        }
+    }
+
+    private static Cursor cursor(LongSortedSet ids) {
+        return ids == null ? new UnionCursor(new Cursor[0]) : new SetCursor(ids);
+    }
+
+    private static boolean containsAll(Cursor[] cursors, long id) {
+        for (Cursor cursor : cursors) {
+            if (!cursor.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] append(long[] page, int index, long id) {
+        long[] target = index < page.length ? page : Arrays.copyOf(page, page.length * 2);
+        target[index] = id;
+        return target;
+    }
+
+    // Возрастающая последовательность id с переходом к следующему после заданного
+    private interface Cursor {
+
+        long NONE = Long.MAX_VALUE;
+
+        // Наименьший id больше after или NONE
+        long next(long after);
+
+        boolean contains(long id);
+    }
+
+    //Читает множество блоками: каждый блок - согласованный срез, как страница с after
+    private static class SetCursor implements Cursor {
+
+        private static final int BLOCK = 64;
+
+        private final LongSortedSet ids;
+        private long[] block = LongSortedSet.EMPTY;
+        private long blockAfter = Long.MAX_VALUE;
+
+        SetCursor(LongSortedSet ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public long next(long after) {
+            if (after >= blockAfter) {
+                int index = LongSortedSet.indexAfter(block, block.length, after);
+                if (index < block.length) {
+                    return block[index];
+                }
+                if (block.length < BLOCK) {
+                    return NONE;
+                }
+            }
+            block = ids.page(after, BLOCK);
+            blockAfter = after;
+            return block.length == 0 ? NONE : block[0];
+        }
+
+        @Override
+        public boolean contains(long id) {
+            return ids.contains(id);
+        }
+    }
+
+    private static class UnionCursor implements Cursor {
+
+        private final Cursor[] parts;
+
+        UnionCursor(Cursor[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public long next(long after) {
+            long min = NONE;
+            for (Cursor part : parts) {
+                min = Math.min(min, part.next(after));
+            }
+            return min;
+        }
+
+        @Override
+        public boolean contains(long id) {
+            for (Cursor part : parts) {
+                if (part.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    //Пересечение "чехардой": каждый курсор перескакивает к текущему кандидату, пока все не совпадут
+    private static class IntersectionCursor implements Cursor {
+
+        private final Cursor[] parts;
+
+        IntersectionCursor(Cursor[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public long next(long after) {
+            long candidate = parts[0].next(after);
+            int agreed = 1;
+            int i = 1 % parts.length;
+            while (candidate != NONE && agreed < parts.length) {
+                long value = parts[i].next(candidate - 1);
+                if (value == candidate) {
+                    agreed++;
+                } else {
+                    candidate = value;
+                    agreed = 1;
+                }
+                i = (i + 1) % parts.length;
+            }
+            return candidate;
+        }
+
+        @Override
+        public boolean contains(long id) {
+            return containsAll(parts, id);
+        }
+    }
+
+    private static class FilterCursor implements Cursor {
+
+        private final Cursor source;
+        private final LongPredicate filter;
+
+        FilterCursor(Cursor source, LongPredicate filter) {
+            this.source = source;
+            this.filter = filter;
+        }
+
+        @Override
+        public long next(long after) {
+            long id = source.next(after);
+            while (id != NONE && !filter.test(id)) {
+                id = source.next(id);
+            }
+            return id;
+        }
+
+        @Override
+        public boolean contains(long id) {
+            return source.contains(id) && filter.test(id);
+        }
+    }
+}
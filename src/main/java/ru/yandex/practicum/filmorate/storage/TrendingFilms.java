@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Рейтинги "в тренде" за скользящие окна (час, сутки, неделя): по TrendingIndex на окно.
+// Получает лайки как подписчик хранилища фильмов, то есть под блокировкой фильма, вместе со
+// временем, которое хранилище запомнило рядом с лайком: снятый лайк вычитается из корзины
+// своего времени. Окна сдвигает фоновая задача, а не запрос, поставивший лайк.
+// Лайки, восстановленные с диска, времени не имеют, поэтому рейтинги копятся с запуска.
+@Component
+public class TrendingFilms implements StorageListener {
+
+    private final Clock clock;
+    private final Map<Duration, TrendingIndex> windows = new LinkedHashMap<>();
+    private final ScheduledExecutorService rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trending-rotate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public TrendingFilms(FilmStorage filmStorage,
+                         @Value("${filmorate.trending.windows:1h,24h,7d}") List<Duration> windows) {
+        this(filmStorage, windows, Clock.systemUTC());
+    }
+
+    // clock должен совпадать с часами хранилища: по ним поставлено время лайков
+    public TrendingFilms(FilmStorage filmStorage, List<Duration> windows, Clock clock) {
+        this.clock = clock;
+        for (Duration window : windows) {
+            TrendingIndex index = new TrendingIndex(window.toMillis());
+            this.windows.put(window, index);
+            long step = index.bucketMillis();
+            rotator.scheduleWithFixedDelay(() -> index.rotate(clock.millis()), step, step, TimeUnit.MILLISECONDS);
+        }
+        filmStorage.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        rotator.shutdownNow();
+    }
+
+    public boolean supports(Duration window) {
+        return windows.containsKey(window);
+    }
+
+    // id фильмов в порядке убывания числа лайков за окно
+    public List<Long> top(Duration window, int count) {
+        TrendingIndex index = windows.get(window);
+        return index == null ? Collections.emptyList() : index.top(count, clock.millis());
+    }
+
+    @Override
+    public void likeAdded(long filmId, long userId, long likedAt) {
+        for (TrendingIndex index : windows.values()) {
+            index.add(filmId, likedAt);
+        }
+    }
+
+    @Override
+    public void likeRemoved(long filmId, long userId, long likedAt) {
+        if (likedAt > 0) {
+            long now = clock.millis();
+            for (TrendingIndex index : windows.values()) {
+                index.remove(filmId, likedAt, now);
+            }
+        }
+    }
+
+    // Лайки загружены заново без уведомлений (снимок на реплике): рейтинги начинаются заново, как при запуске
+    @Override
+    public void recovered() {
+        for (TrendingIndex index : windows.values()) {
+            index.clear();
+        }
+    }
+}
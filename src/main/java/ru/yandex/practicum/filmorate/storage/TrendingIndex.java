@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Рейтинг фильмов по числу лайков за скользящее окно. У каждого фильма с лайками в окне -
+// кольцо грубых корзин (около TARGET_BUCKETS на окно, не меньше минуты: для суток - по часу),
+// окно сдвигается целыми корзинами. Лайк добавляется в корзину своего времени, снятый лайк
+// вычитается из корзины, в которую попал при постановке, если она еще в окне.
+// Память - на фильм, а не на лайк; фильм без лайков в окне из индекса выбрасывается.
+// Изменения одного фильма идут атомарно через compute его записи.
+class TrendingIndex {
+
+    private static final long MINUTE = 60_000;
+    private static final int TARGET_BUCKETS = 24;
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+    //Оценки на момент последнего изменения фильма или сдвига его кольца - не меньше текущих
+    private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+
+    TrendingIndex(long windowMillis) {
+        //Время лайков хранится с точностью до минуты - корзины кратны минуте
+        this.bucketMillis = Math.max(MINUTE, windowMillis / TARGET_BUCKETS / MINUTE * MINUTE);
+        this.buckets = (int) Math.max(1, (windowMillis + bucketMillis - 1) / bucketMillis);
+    }
+
+    // С таким шагом окно сдвигается и его стоит обходить фоновой задачей
+    long bucketMillis() {
+        return bucketMillis;
+    }
+
+    void add(long filmId, long likedAt) {
+        long bucket = likedAt / bucketMillis;
+        rings.compute(filmId, (id, ring) -> {
+            Ring changed = ring == null ? new Ring(buckets, bucket) : ring;
+            changed.add(bucket, 1);
+            return rank(id, changed);
+        });
+    }
+
+    // Снимает лайк, поставленный в likedAt
+    void remove(long filmId, long likedAt, long now) {
+        long bucket = likedAt / bucketMillis;
+        long current = now / bucketMillis;
+        rings.computeIfPresent(filmId, (id, ring) -> {
+            ring.advance(current);
+            ring.add(bucket, -1);
+            return rank(id, ring);
+        });
+    }
+
+    // Сдвигает кольца всех фильмов к моменту now и выбрасывает фильмы без лайков в окне
+    void rotate(long now) {
+        long current = now / bucketMillis;
+        for (Long filmId : rings.keySet()) {
+            rings.computeIfPresent(filmId, (id, ring) -> {
+                ring.advance(current);
+                return rank(id, ring);
+            });
+        }
+    }
+
+    void clear() {
+        rings.clear();
+        ranking.clear();
+    }
+
+    // Оценки в рейтинге могут быть устаревшими, но не меньше текущих: идем по ним,
+    // пока лучшие count текущих не окажутся выше следующей устаревшей
+    List<Long> top(int count, long now) {
+        if (count <= 0) {
+            return List.of();
+        }
+        long current = now / bucketMillis;
+        PriorityQueue<Entry> best = new PriorityQueue<>(ORDER.reversed());
+        for (Entry entry : ranking) {
+            if (best.size() == count && ORDER.compare(best.peek(), entry) < 0) {
+                break;
+            }
+            Ring ring = rings.get(entry.filmId());
+            int likes = ring == null ? 0 : ring.likesAt(current);
+            if (likes > 0) {
+                best.add(new Entry(entry.filmId(), likes));
+                if (best.size() > count) {
+                    best.poll();
+                }
+            }
+        }
+        List<Long> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().filmId());
+        }
+        return result.reversed();
+    }
+
+    //Вызывается внутри compute записи фильма; null убирает фильм из индекса
+    private Ring rank(long filmId, Ring ring) {
+        if (ring.entry != null && ring.entry.likes() == ring.likes) {
+            return ring.likes == 0 ? null : ring;
+        }
+        if (ring.entry != null) {
+            ranking.remove(ring.entry);
+            ring.entry = null;
+        }
+        if (ring.likes == 0) {
+            return null;
+        }
+        ring.entry = new Entry(filmId, ring.likes);
+        ranking.add(ring.entry);
+        return ring;
+    }
+
+    // Корзины одного фильма: counts[bucket % length] для корзин (head - length, head]
+    private static class Ring {
+
+        final int[] counts;
+        //Меняются внутри compute, читаются рейтингом без блокировки - рейтинг приблизительный
+        volatile long head;
+        volatile int likes;
+        Entry entry;
+
+        Ring(int buckets, long head) {
+            this.counts = new int[buckets];
+            this.head = head;
+        }
+
+        // Сдвигает окно так, чтобы bucket стала последней корзиной; выпавшие корзины обнуляются
+        void advance(long bucket) {
+            if (bucket <= head) {
+                return;
+            }
+            long steps = Math.min(bucket - head, counts.length);
+            int remaining = likes;
+            for (long i = 1; i <= steps; i++) {
+                int slot = slot(head + i);
+                remaining -= counts[slot];
+                counts[slot] = 0;
+            }
+            likes = remaining;
+            head = bucket;
+        }
+
+        // Корзина старше окна уже не учитывается - лайк в ней ничего не весит
+        void add(long bucket, int delta) {
+            advance(bucket);
+            if (bucket > head - counts.length) {
+                int slot = slot(bucket);
+                int updated = Math.max(0, counts[slot] + delta);
+                likes += updated - counts[slot];
+                counts[slot] = updated;
+            }
+        }
+
+        // Лайки в окне, последняя корзина которого - bucket, без изменения кольца
+        int likesAt(long bucket) {
+            long last = head;
+            if (bucket <= last) {
+                return likes;
+            }
+            if (bucket - last >= counts.length) {
+                return 0;
+            }
+            int result = likes;
+            for (long expired = last - counts.length + 1; expired <= bucket - counts.length; expired++) {
+                result -= counts[slot(expired)];
+            }
+            return Math.max(0, result);
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) counts.length);
+        }
+    }
+
+    private record Entry(long filmId, int likes) {
+    }
+}
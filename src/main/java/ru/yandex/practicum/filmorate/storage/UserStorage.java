@@ -1,26 +1,60 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 public interface UserStorage {
+    // Подписчики получают изменения синхронно, под блокировкой пользователя
+    void addListener(StorageListener listener);
+
     ResponseEntity<?> createUser(User user);
 
     ResponseEntity<?> updateUser(User user);
 
+    // Пакетное создание: ошибки проверки по позициям, null - пользователь создан и получил id
+    List<String> createUsers(List<User> users);
+
     ResponseEntity<List<User>> getAllUsers();
 
+    // Страница пользователей по возрастанию id: после after (если задан), не более limit
+    List<User> getUsers(Long after, int limit);
+
+    // Все пользователи по возрастанию id без копирования в список, для потоковой выдачи
+    Stream<User> streamAllUsers();
+
+    // То же с учетом спроса: следующие пользователи читаются, только когда подписчик их запросил
+    Flow.Publisher<User> publishAllUsers();
+
     void addFriend(Long userId, Long friendId);
 
     void removeFriend(Long userId, Long friendId);
 
+    // Пакетное добавление в друзья: каждый пользователь проверяется один раз, результаты - в порядке пар
+    List<BatchStatus> addFriends(List<Friendship> friendships);
+
     List<User> getFriends(Long id);
 
+    // Друзья по возрастанию id по мере спроса подписчика; отсутствие пользователя проверяется сразу
+    Flow.Publisher<User> publishFriends(long userId);
+
     List<User> getCommonFriends(Long userId, Long otherId);
 
+    // Общие друзья по возрастанию id: после after (если задан), не более limit
+    List<User> getCommonFriends(Long userId, Long otherId, Long after, int limit);
+
     User getUserById(Long id);
+
+    // id друзей пользователя по возрастанию
+    long[] getFriendIds(long userId);
+
+    // Проверка существования без исключения - для пакетных операций
+    boolean containsUser(long id);
 }
 
 
@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.validate;
 
-import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.time.LocalDate;
@@ -10,26 +9,39 @@ public class FilmValidate {
     private static final int MAX_DESCRIPTION_LENGTH = 200;
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
 
+    private static final ValidationResult EMPTY_NAME =
+            ValidationResult.invalid("Название фильма не может быть пустым.");
+    private static final ValidationResult LONG_DESCRIPTION =
+            ValidationResult.invalid("Максимальная длина описания фильма — " + MAX_DESCRIPTION_LENGTH + " символов.");
+    private static final ValidationResult EARLY_RELEASE =
+            ValidationResult.invalid("Дата релиза фильма должна быть не раньше " + MIN_RELEASE_DATE + " года.");
+    private static final ValidationResult NON_POSITIVE_DURATION =
+            ValidationResult.invalid("Продолжительность фильма должна быть положительным числом.");
+
     public static void validateFilm(Film film) {
+        checkFilm(film).orThrow();
+    }
+
+    public static ValidationResult checkFilm(Film film) {
 
         if (film.getName() == null || film.getName().isEmpty()) {
-            throw new ValidationException("Название фильма не может быть пустым.");
+            return EMPTY_NAME;
         }
 
 
         if (film.getDescription() != null && film.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
-            throw new ValidationException("Максимальная длина описания фильма — " + MAX_DESCRIPTION_LENGTH + " символов.");
+            return LONG_DESCRIPTION;
         }
 
 
         if (film.getReleaseDate() != null && film.getReleaseDate().isBefore(MIN_RELEASE_DATE)) {
-            throw new ValidationException("Дата релиза фильма должна быть не раньше " + MIN_RELEASE_DATE + " года.");
+            return EARLY_RELEASE;
         }
 
 
         if (film.getDuration() <= 0) {
-            throw new ValidationException("Продолжительность фильма должна быть положительным числом.");
+            return NON_POSITIVE_DURATION;
         }
+        return ValidationResult.VALID;
     }
 }
-
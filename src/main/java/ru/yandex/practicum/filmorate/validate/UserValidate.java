@@ -1,21 +1,32 @@
 package ru.yandex.practicum.filmorate.validate;
 
-import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
 
 public class UserValidate {
 
+    private static final ValidationResult BAD_EMAIL =
+            ValidationResult.invalid("Электронная почта должна быть указана и содержать символ @.");
+    private static final ValidationResult BAD_LOGIN =
+            ValidationResult.invalid("Логин должен быть указан и не может содержать пробелы.");
+    private static final ValidationResult FUTURE_BIRTHDAY =
+            ValidationResult.invalid("Дата рождения не может быть в будущем.");
+
     public static void validateUser(User user) {
+        checkUser(user).orThrow();
+    }
+
+    // Как и раньше, пустое имя заменяется логином
+    public static ValidationResult checkUser(User user) {
 
         if (user.getEmail() == null || user.getEmail().isEmpty() || !user.getEmail().contains("@")) {
-            throw new ValidationException("Электронная почта должна быть указана и содержать символ @.");
+            return BAD_EMAIL;
         }
 
 
         if (user.getLogin() == null || user.getLogin().isEmpty() || user.getLogin().contains(" ")) {
-            throw new ValidationException("Логин должен быть указан и не может содержать пробелы.");
+            return BAD_LOGIN;
         }
 
 
@@ -25,9 +36,8 @@ public class UserValidate {
 
 
         if (user.getBirthday() != null && user.getBirthday().isAfter(LocalDate.now())) {
-            throw new ValidationException("Дата рождения не может быть в будущем.");
+            return FUTURE_BIRTHDAY;
         }
+        return ValidationResult.VALID;
     }
 }
-
-
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.validate;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.Map;
+
+// Итог проверки без исключений. Результаты - константы правил: у каждого заранее собран
+// ответ 400 с телом {"error": ...}, поэтому отказ в записи ничего не выделяет.
+// Ответ неизменяемый и общий для всех запросов
+public final class ValidationResult {
+
+    public static final ValidationResult VALID = new ValidationResult(null);
+
+    private final String message;
+    private final ResponseEntity<Map<String, String>> response;
+
+    private ValidationResult(String message) {
+        this.message = message;
+        this.response = message == null ? null : new ResponseEntity<>(Map.of("error", message), HttpStatus.BAD_REQUEST);
+    }
+
+    static ValidationResult invalid(String message) {
+        return new ValidationResult(message);
+    }
+
+    public boolean isValid() {
+        return message == null;
+    }
+
+    // Текст ошибки или null, если проверка пройдена
+    public String message() {
+        return message;
+    }
+
+    public ResponseEntity<Map<String, String>> response() {
+        return response;
+    }
+
+    // Для вызывающих, которым удобнее исключение
+    public void orThrow() {
+        if (message != null) {
+            throw new ValidationException(message);
+        }
+    }
+}
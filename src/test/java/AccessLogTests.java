@@ -0,0 +1,146 @@
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.yandex.practicum.filmorate.controller.AccessLogFilter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogTests {
+
+    private final Logger accessLog = (Logger) LoggerFactory.getLogger("filmorate.access");
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+    //Первая запись задерживает поток журнала, пока тест не отпустит его
+    private final CountDownLatch writerBusy = new CountDownLatch(1);
+    private final CountDownLatch releaseWriter = new CountDownLatch(1);
+    private final AppenderBase<ILoggingEvent> appender = new AppenderBase<>() {
+        @Override
+        protected void append(ILoggingEvent event) {
+            writerBusy.countDown();
+            try {
+                releaseWriter.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(event.getFormattedMessage());
+        }
+    };
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AccessLogFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        accessLog.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseWriter.countDown();
+        filter.destroy();
+        accessLog.detachAppender(appender);
+    }
+
+    @Test
+    void sampling_shouldSkipSuccessesButAlwaysLogErrors() throws Exception {
+        releaseWriter.countDown();
+        filter = new AccessLogFilter(registry, 0, 16);
+        for (int i = 0; i < 10; i++) {
+            filter.doFilter(request("/films"), new MockHttpServletResponse(), respond(200));
+        }
+        filter.doFilter(request("/films/99"), new MockHttpServletResponse(), respond(404));
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(request("/films"),
+                new MockHttpServletResponse(), (request, response) -> {
+                    throw new IllegalStateException("Сбой обработчика");
+                }));
+
+        awaitLines(2);
+        assertEquals(List.of("GET /films/99 404 0 байт", "GET /films 500 0 байт"),
+                lines.stream().map(AccessLogTests::withoutTime).toList());
+    }
+
+    @Test
+    void fullQueue_shouldDropAndCountEntries() throws Exception {
+        filter = new AccessLogFilter(registry, 1, 1);
+        filter.doFilter(request("/films/1"), new MockHttpServletResponse(), respond(200));
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+        //Поток журнала занят первой записью: вторая ждет в очереди, остальные не помещаются
+        for (int i = 2; i <= 4; i++) {
+            filter.doFilter(request("/films/" + i), new MockHttpServletResponse(), respond(200));
+        }
+        assertEquals(2, registry.get("filmorate.access.dropped").functionCounter().count());
+
+        releaseWriter.countDown();
+        awaitLines(2);
+        assertEquals(List.of("GET /films/1 200 0 байт", "GET /films/2 200 0 байт"),
+                lines.stream().map(AccessLogTests::withoutTime).toList());
+    }
+
+    @Test
+    void asyncResponse_shouldBeLoggedOnceWhenFinished() throws Exception {
+        releaseWriter.countDown();
+        filter = new AccessLogFilter(registry, 1, 16);
+        HttpServletResponse[] wrapped = new HttpServletResponse[1];
+        MockHttpServletRequest streamed = request("/films/popular");
+        filter.doFilter(streamed, new MockHttpServletResponse(), (request, response) -> {
+            request.startAsync();
+            wrapped[0] = (HttpServletResponse) response;
+        });
+        //Тело пишется после выхода из фильтра
+        wrapped[0].getOutputStream().write(new byte[]{'[', ']', '\n'});
+        ((MockAsyncContext) streamed.getAsyncContext()).complete();
+
+        MockHttpServletRequest failed = request("/films");
+        filter.doFilter(failed, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        MockAsyncContext context = (MockAsyncContext) failed.getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onError(new AsyncEvent(context, new IllegalStateException("Обрыв соединения")));
+        }
+        context.complete();
+
+        awaitLines(2);
+        Thread.sleep(100);
+        assertEquals(List.of("GET /films/popular 200 3 байт", "GET /films 500 0 байт"),
+                lines.stream().map(AccessLogTests::withoutTime).toList());
+    }
+
+    private void awaitLines(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (lines.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, lines.size(), "Записи журнала: " + lines);
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static FilterChain respond(int status) {
+        return (request, response) -> ((HttpServletResponse) response).setStatus(status);
+    }
+
+    private static String withoutTime(String line) {
+        return line.substring(0, line.lastIndexOf(' ', line.length() - " мкс".length() - 1));
+    }
+}
@@ -0,0 +1,462 @@
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchStatus;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarity;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+import ru.yandex.practicum.filmorate.storage.TrendingFilms;
+import ru.yandex.practicum.filmorate.validate.FilmValidate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmStorageTests {
+
+    private InMemoryFilmStorage filmStorage;
+
+    @BeforeEach
+    void setUp() {
+        filmStorage = new InMemoryFilmStorage();
+        for (int i = 1; i <= 4; i++) {
+            filmStorage.createFilm(new Film(null, "Film " + i, "Description", 100, LocalDate.of(2000, 1, i)));
+        }
+    }
+
+    @Test
+    void getPopularFilms_shouldFollowLikes() {
+        filmStorage.addLike(3L, 1L);
+        filmStorage.addLike(3L, 2L);
+        filmStorage.addLike(2L, 1L);
+
+        assertEquals(List.of(3L, 2L, 1L), ids(filmStorage.getPopularFilms(3)));
+
+        filmStorage.removeLike(3L, 1L);
+        filmStorage.removeLike(3L, 2L);
+        assertEquals(List.of(2L, 1L, 3L, 4L), ids(filmStorage.getPopularFilms(10)));
+    }
+
+    @Test
+    void invalidFilm_shouldBeRejectedWithSharedResponse() {
+        Film noName = new Film(null, "", "Description", 100, LocalDate.of(2000, 1, 1));
+        Film badDuration = new Film(2L, "Film", "Description", 0, LocalDate.of(2000, 1, 1));
+
+        ResponseEntity<?> first = filmStorage.createFilm(noName);
+        assertEquals(HttpStatus.BAD_REQUEST, first.getStatusCode());
+        assertEquals(Map.of("error", "Название фильма не может быть пустым."), first.getBody());
+        //Ответ на одно и то же нарушение собран заранее и не создается на каждый отказ
+        assertSame(first, filmStorage.createFilm(noName));
+        assertSame(FilmValidate.checkFilm(badDuration).response(), filmStorage.updateFilm(badDuration));
+        assertEquals(4, filmStorage.getAllFilms().getBody().size());
+
+        //Неизвестный id - тоже общий ответ 404
+        ResponseEntity<?> missing = filmStorage.updateFilm(new Film(99L, "Film", "Description", 100, null));
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+        assertSame(missing, filmStorage.updateFilm(new Film(98L, "Film", "Description", 100, null)));
+
+        ValidationException thrown = assertThrows(ValidationException.class, () -> FilmValidate.validateFilm(noName));
+        assertEquals(0, thrown.getStackTrace().length);
+    }
+
+    @Test
+    void getPopularFilms_shouldIgnoreRepeatedLike() {
+        filmStorage.addLike(4L, 1L);
+        filmStorage.addLike(4L, 1L);
+        filmStorage.addLike(1L, 2L);
+        filmStorage.addLike(1L, 3L);
+
+        assertEquals(List.of(1L, 4L), ids(filmStorage.getPopularFilms(2)));
+    }
+
+    @Test
+    void getFilms_shouldPageByIdUpToTheEnd() {
+        assertEquals(List.of(1L, 2L), ids(filmStorage.getFilms(null, 2)));
+        assertEquals(List.of(3L, 4L), ids(filmStorage.getFilms(2L, 2)));
+        //После последнего id и за ним - пустая страница, а не ошибка
+        assertEquals(List.of(), filmStorage.getFilms(4L, 2));
+        assertEquals(List.of(), filmStorage.getFilms(100L, 2));
+        //limit=0 доходит до хранилища: пустая страница
+        assertEquals(List.of(), filmStorage.getFilms(null, 0));
+        //Без limit контроллер запрашивает Integer.MAX_VALUE: память под него заранее не выделяется
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(filmStorage.getFilms(null, Integer.MAX_VALUE)));
+        assertEquals(List.of(), new InMemoryFilmStorage().getFilms(null, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void streamFilms_shouldWriteNothingForEmptyStore() throws IOException {
+        FilmService service = new FilmService(new InMemoryFilmStorage(), null, null, null, null, null);
+        ResponseEntity<StreamingResponseBody> response = new FilmController(service,
+                JsonMapper.builder().findAndAddModules().build(), null).streamFilms();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    void publishPopularFilms_shouldEmitOnlyRequestedFilms() {
+        for (long filmId = 1; filmId <= 4; filmId++) {
+            for (long userId = 1; userId <= filmId % 3; userId++) {
+                filmStorage.addLike(filmId, userId);
+            }
+        }
+        Flow.Publisher<Film> publisher = filmStorage.publishPopularFilms(3);
+        List<Long> received = new ArrayList<>();
+        List<String> signals = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(Film film) {
+                received.add(film.getId());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add("error");
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("complete");
+            }
+        });
+        //До запроса ничего не читается, после - ровно запрошенное
+        assertEquals(List.of(), received);
+        subscription[0].request(2);
+        assertEquals(List.of(2L, 1L), received);
+        assertEquals(List.of(), signals);
+        subscription[0].request(10);
+        assertEquals(List.of(2L, 1L, 4L), received);
+        assertEquals(List.of("complete"), signals);
+    }
+
+    @Test
+    void addLikes_shouldReportEveryPairAndUpdateRanking() {
+        filmStorage.addLike(2L, 1L);
+        List<BatchStatus> statuses = filmStorage.addLikes(List.of(
+                new FilmLike(4L, 1L),
+                new FilmLike(4L, 2L),
+                new FilmLike(2L, 1L),
+                new FilmLike(99L, 1L),
+                new FilmLike(4L, 7L),
+                new FilmLike(null, 1L)), userId -> userId < 5);
+
+        assertEquals(List.of(BatchStatus.APPLIED, BatchStatus.APPLIED, BatchStatus.UNCHANGED,
+                BatchStatus.FILM_NOT_FOUND, BatchStatus.USER_NOT_FOUND, BatchStatus.INVALID), statuses);
+        assertEquals(List.of(4L, 2L), ids(filmStorage.getPopularFilms(2)));
+    }
+
+    @Test
+    void createFilms_shouldAssignIdBlockToValidFilmsOnly() {
+        List<Film> batch = List.of(
+                new Film(null, "Film 5", "Description", 100, LocalDate.of(2000, 1, 5)),
+                new Film(null, "", "Description", 100, LocalDate.of(2000, 1, 6)),
+                new Film(null, "Film 7", "Description", 100, LocalDate.of(2000, 1, 7)));
+
+        List<String> errors = filmStorage.createFilms(batch);
+
+        assertEquals(null, errors.get(0));
+        assertEquals("Название фильма не может быть пустым.", errors.get(1));
+        assertEquals(null, errors.get(2));
+        assertEquals(5L, batch.get(0).getId());
+        assertEquals(6L, batch.get(2).getId());
+        assertEquals(6, filmStorage.getAllFilms().getBody().size());
+    }
+
+    @Test
+    void importFilms_shouldRejectFailedChunkAndKeepLoading() throws Exception {
+        InMemoryFilmStorage failing = new InMemoryFilmStorage() {
+            @Override
+            public List<String> createFilms(List<Film> batch) {
+                if (batch.stream().anyMatch(film -> "broken".equals(film.getName()))) {
+                    throw new IllegalStateException("Журнал недоступен");
+                }
+                return super.createFilms(batch);
+            }
+        };
+        FilmService service = new FilmService(failing, null, null, null, null, null);
+        StringBuilder body = new StringBuilder();
+        for (int line = 1; line <= 2500; line++) {
+            body.append("{\"name\":\"").append(line == 1500 ? "broken" : "Film " + line)
+                    .append("\",\"duration\":100}\n");
+        }
+        ImportResult result;
+        try (MappingIterator<Film> items = JsonMapper.builder().findAndAddModules().build()
+                .readerFor(Film.class).readValues(body.toString())) {
+            result = service.importFilms(items);
+        }
+
+        //Вторая пачка (строки 1001-2000) отклонена целиком, остальные загружены
+        assertEquals(1500, result.getCreated());
+        assertEquals(1000, result.getFailed());
+        assertEquals(1, result.getErrors().size());
+        assertEquals(1001, result.getErrors().get(0).getLine());
+        assertTrue(result.getErrors().get(0).getError().contains("Журнал недоступен"));
+        assertEquals(1500, failing.getAllFilms().getBody().size());
+    }
+
+    @Test
+    void trendingFilms_shouldCountLikesInWindowBuckets() {
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        };
+        //Время лайков ставит хранилище - у рейтингов те же часы
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(clock);
+        for (int i = 1; i <= 4; i++) {
+            storage.createFilm(new Film(null, "Film " + i, "Description", 100, LocalDate.of(2000, 1, i)));
+        }
+        Duration hour = Duration.ofHours(1);
+        Duration week = Duration.ofDays(7);
+        TrendingFilms trending = new TrendingFilms(storage, List.of(hour, week), clock);
+        storage.addLike(1L, 1L);
+        storage.addLike(1L, 2L);
+        storage.addLike(1L, 3L);
+        now.addAndGet(Duration.ofHours(3).toMillis());
+        storage.addLike(2L, 1L);
+        storage.addLike(3L, 1L);
+        storage.addLike(3L, 2L);
+
+        //Лайки фильма 1 вышли из часового окна, хотя его кольцо с тех пор не сдвигалось
+        assertEquals(List.of(3L, 2L), trending.top(hour, 3));
+        assertEquals(List.of(1L, 3L, 2L), trending.top(week, 3));
+        assertEquals(List.of(1L, 3L, 2L), ids(storage.getPopularFilms(3)));
+        assertEquals(List.of(), trending.top(week, 0));
+
+        //Снятый лайк вычитается из корзины своего времени: старый - только из недельного окна
+        storage.removeLike(3L, 1L);
+        storage.removeLike(3L, 2L);
+        storage.removeLike(1L, 1L);
+        assertEquals(List.of(2L), trending.top(hour, 3));
+        assertEquals(List.of(1L, 2L), trending.top(week, 3));
+
+        //Через неделю все лайки вышли из окон; снятие свежего лайка не оставляет призрака
+        now.addAndGet(Duration.ofDays(8).toMillis());
+        storage.addLike(4L, 1L);
+        assertEquals(List.of(4L), trending.top(hour, 3));
+        storage.removeLike(4L, 1L);
+        storage.removeLike(1L, 2L);
+        assertEquals(List.of(), trending.top(hour, 3));
+        assertEquals(List.of(), trending.top(week, 3));
+        trending.stop();
+    }
+
+    @Test
+    void getLikedFilms_shouldPageReverseIndexAndFollowUnlikes() {
+        filmStorage.addLike(4L, 7L);
+        filmStorage.addLike(2L, 7L);
+        filmStorage.addLikes(List.of(new FilmLike(1L, 7L), new FilmLike(3L, 8L)), userId -> true);
+
+        assertEquals(List.of(1L, 2L, 4L), ids(filmStorage.getLikedFilms(7L, null, 10)));
+        assertEquals(List.of(1L, 2L), ids(filmStorage.getLikedFilms(7L, null, 2)));
+        assertEquals(List.of(4L), ids(filmStorage.getLikedFilms(7L, 2L, 2)));
+        assertEquals(List.of(3L), ids(filmStorage.getLikedFilms(8L, null, 10)));
+
+        filmStorage.removeLike(2L, 7L);
+        assertEquals(List.of(1L, 4L), ids(filmStorage.getLikedFilms(7L, null, 10)));
+        assertEquals(List.of(), ids(filmStorage.getLikedFilms(9L, null, 10)));
+    }
+
+    @Test
+    void findFilms_shouldFilterByRangesAndFollowUpdates() {
+        filmStorage.createFilm(new Film(null, "Film 5", "Description", 90, LocalDate.of(1995, 6, 1)));
+        filmStorage.createFilm(new Film(null, "Film 6", "Description", 150, LocalDate.of(1998, 3, 1)));
+        filmStorage.createFilm(new Film(null, "Film 7", "Description", 80, LocalDate.of(2010, 1, 1)));
+        FilmFilter nineties = new FilmFilter(LocalDate.of(1990, 1, 1), LocalDate.of(1999, 12, 31), null, 99);
+
+        assertEquals(List.of(5L), ids(filmStorage.findFilms(nineties, null, 10)));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 6L),
+                ids(filmStorage.findFilms(new FilmFilter(null, null, 100, null), null, 10)));
+        FilmFilter fromSecond = new FilmFilter(LocalDate.of(2000, 1, 2), null, null, null);
+        assertEquals(List.of(3L, 4L), ids(filmStorage.findFilms(fromSecond, 2L, 2)));
+        //Широкий диапазон и маленькая страница - обход каталога вместо индекса, ответ тот же
+        assertEquals(List.of(2L), ids(filmStorage.findFilms(fromSecond, null, 1)));
+        assertEquals(List.of(), ids(filmStorage.findFilms(new FilmFilter(null, null, 200, 100), null, 10)));
+        //Нулевой и отрицательный limit доходят сюда без проверки: пустая страница, а не исключение
+        assertEquals(List.of(), filmStorage.findFilms(nineties, null, 0));
+        assertEquals(List.of(), filmStorage.findFilms(nineties, null, -1));
+        assertEquals(List.of(), filmStorage.findFilms(new FilmFilter(null, null, 1, null), null, -1));
+
+        filmStorage.updateFilm(new Film(6L, "Film 6", "Description", 95, LocalDate.of(1998, 3, 1)));
+
+        assertEquals(List.of(5L, 6L), ids(filmStorage.findFilms(nineties, null, 10)));
+        assertEquals(List.of(1L, 2L, 3L, 4L),
+                ids(filmStorage.findFilms(new FilmFilter(null, null, 100, null), null, 10)));
+    }
+
+    @Test
+    void searchFilms_shouldRankNameMatchesFirstAndFollowUpdates() {
+        SearchIndex search = new SearchIndex(filmStorage, new InMemoryUserStorage());
+        filmStorage.createFilm(new Film(null, "Звёздные войны", "Космическая опера", 121, LocalDate.of(1977, 5, 25)));
+        filmStorage.createFilm(new Film(null, "Солярис", "Станция над звездным океаном", 167, LocalDate.of(1972, 2, 5)));
+        filmStorage.createFilm(new Film(null, "Звездный путь", "Космос, последний рубеж", 132, LocalDate.of(1979, 12, 7)));
+
+        assertEquals(List.of(5L, 7L, 6L), ids(search.searchFilms("звездн", 0, 10)));
+        assertEquals(List.of(7L, 6L), ids(search.searchFilms("звездн", 1, 10)));
+        assertEquals(List.of(5L), ids(search.searchFilms("ЗВЕЗДНЫЕ войн", 0, 10)));
+        assertEquals(List.of(), ids(search.searchFilms("звездн ", 0, 10)));
+        assertEquals(List.of(5L, 7L), ids(search.searchFilms("косм", 0, 10)));
+        //Параметры запроса не проверяются в контроллере: пустая страница или offset 0, а не исключение
+        assertEquals(List.of(), ids(search.searchFilms("звездн", 0, 0)));
+        assertEquals(List.of(), ids(search.searchFilms("звездн", 0, -1)));
+        assertEquals(List.of(5L, 7L, 6L), ids(search.searchFilms("звездн", -5, 10)));
+
+        filmStorage.updateFilm(new Film(7L, "Стартрек", "Космос, последний рубеж", 132, LocalDate.of(1979, 12, 7)));
+        assertEquals(List.of(5L, 6L), ids(search.searchFilms("звездн", 0, 10)));
+        assertEquals(List.of(7L), ids(search.searchFilms("старт", 0, 10)));
+    }
+
+    @Test
+    void filmSimilarity_shouldFollowCooccurrenceAndMinHashForPopular() throws InterruptedException {
+        //С 30 лайков фильм считается популярным
+        FilmSimilarity similarity = new FilmSimilarity(filmStorage, 4, 30, 1000);
+        for (long userId = 1; userId <= 5; userId++) {
+            filmStorage.addLike(1L, userId);
+            filmStorage.addLike(2L, userId);
+        }
+        filmStorage.addLike(1L, 6L);
+        filmStorage.addLike(3L, 6L);
+
+        //Лайки учитываются в индексе фоновым потоком
+        awaitSimilar(similarity, 1L, List.of(2L, 3L));
+        assertEquals(List.of(2L), similarity.recommend(6L, 10));
+        assertEquals(List.of(), similarity.similar(1L, 0));
+        assertEquals(List.of(), similarity.similar(1L, -1));
+        assertEquals(List.of(), similarity.recommend(6L, -1));
+        FilmSimilarity rebuilt = new FilmSimilarity(filmStorage, 4, 30, 1000);
+        rebuilt.recovered();
+        assertEquals(List.of(2L, 3L), rebuilt.similar(1L, 10));
+
+        for (long userId = 1; userId <= 5; userId++) {
+            filmStorage.removeLike(2L, userId);
+        }
+        awaitSimilar(similarity, 1L, List.of(3L));
+
+        //Одинаковые множества лайкнувших - одинаковые подписи и общие LSH-корзины
+        for (long userId = 100; userId < 140; userId++) {
+            filmStorage.addLike(3L, userId);
+            filmStorage.addLike(4L, userId);
+        }
+        awaitSimilar(similarity, 3L, List.of(4L));
+        assertEquals(List.of(3L), similarity.similar(4L, 10));
+    }
+
+    @Test
+    void filmSimilarity_shouldRebuildAfterQueueOverflow() throws InterruptedException {
+        //Очередь на два лайка переполняется первой же серией
+        FilmSimilarity similarity = new FilmSimilarity(filmStorage, 4, 1000, 1000, 2);
+        for (long userId = 1; userId <= 20; userId++) {
+            filmStorage.addLike(1L, userId);
+            filmStorage.addLike(2L, userId);
+            if (userId % 4 == 0) {
+                filmStorage.addLike(3L, userId);
+            }
+        }
+        filmStorage.removeLike(2L, 20L);
+
+        awaitSimilar(similarity, 1L, List.of(2L, 3L));
+        assertEquals(List.of(1L, 3L), similarity.similar(2L, 10));
+    }
+
+    @Test
+    void concurrentWrites_shouldNotLoseLikesOrDuplicateIds() throws InterruptedException {
+        Set<Long> createdIds = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            long userId = i;
+            executor.execute(() -> {
+                filmStorage.addLike(1L, userId);
+                Film film = new Film(null, "Film", "Description", 100, LocalDate.of(2000, 1, 1));
+                filmStorage.createFilm(film);
+                createdIds.add(film.getId());
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, createdIds.size());
+        assertEquals(1004, filmStorage.getAllFilms().getBody().size());
+        assertEquals(1L, filmStorage.getPopularFilms(1).get(0).getId());
+        filmStorage.addLike(2L, 1L);
+        for (long userId = 0; userId < 1000; userId++) {
+            filmStorage.removeLike(1L, userId);
+        }
+        assertEquals(2L, filmStorage.getPopularFilms(1).get(0).getId());
+    }
+
+    private static List<Long> ids(long[] ids) {
+        return Arrays.stream(ids)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static void awaitSimilar(FilmSimilarity similarity, long filmId, List<Long> expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!expected.equals(similarity.similar(filmId, 10)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, similarity.similar(filmId, 10));
+    }
+}
@@ -6,15 +6,20 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.controller.ResponseCache;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
 class FilmTests {
@@ -43,7 +48,31 @@ class FilmTests {
         assertEquals(1, response.getBody().size());//Проверяем размер списка
         assertEquals(film, response.getBody().get(0));//Проверяем что фильм тот же
     }
-}
 
+    @Test
+    void responseCache_shouldServeBytesUntilVersionChangesAndKeepFrequentKeys() throws IOException {
+        ResponseCache cache = new ResponseCache(100);
+        AtomicInteger loads = new AtomicInteger();
+        ResponseCache.Loader loader = () -> new byte[]{(byte) loads.incrementAndGet()};
+        ResponseCache.Key hot = ResponseCache.Key.film(1);
 
+        byte[] first = cache.get(hot, "v1", loader);
+        assertSame(first, cache.get(hot, "v1", loader));
+        assertEquals(1, loads.get());
+        //Новая версия - сериализуем заново и больше не отдаем старые байты
+        byte[] second = cache.get(hot, "v2", loader);
+        assertEquals(2, second[0]);
+        for (int i = 0; i < 10; i++) {
+            cache.get(hot, "v2", loader);
+        }
 
+        //Поток разовых чтений не вытесняет часто читаемую запись
+        for (long id = 2; id < 2000; id++) {
+            cache.get(ResponseCache.Key.film(id), "v1", loader);
+            if (id % 20 == 0) {
+                assertSame(second, cache.get(hot, "v2", loader));
+            }
+        }
+        assertTrue(cache.size() <= 100);
+    }
+}
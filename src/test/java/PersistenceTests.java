@@ -0,0 +1,277 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.yandex.practicum.filmorate.controller.ReplicaWriteFilter;
+import ru.yandex.practicum.filmorate.exception.StorageUnavailableException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.persistence.ChangeStreamPublisher;
+import ru.yandex.practicum.filmorate.persistence.ReplicaFollower;
+import ru.yandex.practicum.filmorate.persistence.StoragePersistence;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PersistenceTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restart_shouldRestoreSnapshotAndJournalTail() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        StoragePersistence persistence = persistence(filmStorage, userStorage);
+        persistence.start();
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.createFilm(new Film(null, "Film " + i, "Описание", 90 + i, LocalDate.of(2000, 1, i)));
+            userStorage.createUser(user(i));
+        }
+        filmStorage.addLike(2L, 1L);
+        filmStorage.addLike(2L, 3L);
+        userStorage.addFriend(1L, 2L);
+        persistence.snapshot();
+
+        //Изменения после снимка попадают только в журнал
+        filmStorage.removeLike(2L, 3L);
+        filmStorage.addLike(3L, 1L);
+        filmStorage.addLike(3L, 2L);
+        filmStorage.updateFilm(new Film(1L, "Film 1 (director's cut)", null, 120, null));
+        userStorage.addFriend(2L, 3L);
+        userStorage.removeFriend(1L, 2L);
+        persistence.stop();
+
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage();
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage();
+        StoragePersistence restored = persistence(restoredFilms, restoredUsers);
+        restored.start();
+
+        assertEquals(filmStorage.getAllFilms().getBody(), restoredFilms.getAllFilms().getBody());
+        assertEquals(userStorage.getAllUsers().getBody(), restoredUsers.getAllUsers().getBody());
+        assertEquals(List.of(3L, 2L, 1L), restoredFilms.getPopularFilms(3).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+        assertArrayEquals(new long[]{3}, restoredUsers.getFriendIds(2L));
+        assertArrayEquals(new long[0], restoredUsers.getFriendIds(1L));
+        assertArrayEquals(new long[]{2, 3}, restoredFilms.getLikedFilmIds(1L));
+        assertArrayEquals(new long[0], restoredFilms.getLikedFilmIds(3L));
+
+        //Счетчики id продолжаются после восстановленных записей
+        Film film = new Film(null, "Film 4", "Описание", 100, LocalDate.of(2001, 1, 1));
+        restoredFilms.createFilm(film);
+        assertEquals(4L, film.getId());
+        restored.stop();
+    }
+
+    @Test
+    void write_shouldBeInJournalWhenCallReturns() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        StoragePersistence persistence = persistence(filmStorage, userStorage);
+        persistence.start();
+        filmStorage.createFilm(new Film(null, "Film 1", "Описание", 91, LocalDate.of(2000, 1, 1)));
+        userStorage.createUser(user(1));
+        filmStorage.addLike(1L, 1L);
+
+        //Копия каталога без остановки журнала: в ней только то, что уже лежит в файлах
+        Path copy = Files.createDirectory(directory.resolve("copy"));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        InMemoryFilmStorage restoredFilms = new InMemoryFilmStorage();
+        InMemoryUserStorage restoredUsers = new InMemoryUserStorage();
+        StoragePersistence restored = persistence(restoredFilms, restoredUsers, copy);
+        restored.start();
+        assertEquals(filmStorage.getAllFilms().getBody(), restoredFilms.getAllFilms().getBody());
+        assertEquals(userStorage.getAllUsers().getBody(), restoredUsers.getAllUsers().getBody());
+        assertArrayEquals(new long[]{1}, restoredFilms.getLikeIds(1L));
+        restored.stop();
+        persistence.stop();
+    }
+
+    @Test
+    void journalFailure_shouldRefuseWritesBeforeChangingStorage() throws Exception {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full), "Нужен /dev/full: запись в него всегда заканчивается ENOSPC");
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        StoragePersistence persistence = persistence(filmStorage, userStorage);
+        persistence.start();
+        filmStorage.createFilm(new Film(null, "Film 1", "Описание", 91, LocalDate.of(2000, 1, 1)));
+        userStorage.createUser(user(1));
+        //Следующий сегмент журнала - переполненный диск
+        Files.createSymbolicLink(directory.resolve(String.format("journal-%020d.log", 2)), full);
+        persistence.snapshot();
+
+        try {
+            //Изменение, которое журнал принял до сбоя, получает отказ после fsync
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,
+                    filmStorage.createFilm(new Film(null, "Film 2", "Описание", 92, null)).getStatusCode());
+        } catch (StorageUnavailableException e) {
+            //Журнал закрылся раньше: отказ до изменения
+        }
+        //Дальше хранилища только читаются: отказ приходит до изменения
+        int films = filmStorage.getAllFilms().getBody().size();
+        assertThrows(StorageUnavailableException.class,
+                () -> filmStorage.createFilm(new Film(null, "Film 3", "Описание", 93, null)));
+        assertThrows(StorageUnavailableException.class, () -> filmStorage.addLike(1L, 1L));
+        assertThrows(StorageUnavailableException.class, () -> userStorage.createUser(user(2)));
+        assertEquals(films, filmStorage.getAllFilms().getBody().size());
+        assertArrayEquals(new long[0], filmStorage.getLikeIds(1L));
+        assertEquals(1, userStorage.getAllUsers().getBody().size());
+        persistence.stop();
+    }
+
+    @Test
+    void replica_shouldLoadSnapshotThenFollowChangeStream() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        //Буфер на 4 изменения: к подключению реплики начало потока уже вытеснено, и она получит снимок
+        ChangeStreamPublisher publisher = new ChangeStreamPublisher(filmStorage, userStorage,
+                new SimpleMeterRegistry(), InetAddress.getLoopbackAddress(), 0, 4);
+        publisher.start();
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.createFilm(new Film(null, "Film " + i, "Описание", 90 + i, LocalDate.of(2000, 1, i)));
+            userStorage.createUser(user(i));
+        }
+        filmStorage.addLike(2L, 1L);
+        filmStorage.addLike(2L, 3L);
+        userStorage.addFriend(1L, 2L);
+
+        InMemoryFilmStorage replicaFilms = new InMemoryFilmStorage();
+        InMemoryUserStorage replicaUsers = new InMemoryUserStorage();
+        SearchIndex replicaSearch = new SearchIndex(replicaFilms, replicaUsers);
+        ReplicaFollower follower = new ReplicaFollower(replicaFilms, replicaUsers, new SimpleMeterRegistry(),
+                "127.0.0.1:" + publisher.port());
+        ReplicaWriteFilter filter = new ReplicaWriteFilter("http://localhost:8080", follower);
+        //Пока снимок ведущего не загружен, чтения получают 503, а не пустые списки
+        assertEquals(503, read(filter, "/films").getStatus());
+        assertEquals(200, read(filter, "/actuator/health").getStatus());
+        follower.start();
+        awaitReplica(publisher, follower);
+        assertEquals(filmStorage.getAllFilms().getBody(), replicaFilms.getAllFilms().getBody());
+        assertArrayEquals(new long[]{1, 3}, replicaFilms.getLikeIds(2L));
+        MockHttpServletResponse loaded = read(filter, "/films");
+        assertEquals(200, loaded.getStatus());
+        assertEquals("0", loaded.getHeader("X-Replica-Lag"));
+
+        //Дальше изменения приходят потоком и доходят до подписчиков реплики
+        filmStorage.removeLike(2L, 3L);
+        filmStorage.addLike(3L, 1L);
+        filmStorage.updateFilm(new Film(1L, "Film 1 (director's cut)", null, 120, null));
+        userStorage.addFriend(2L, 3L);
+        userStorage.removeFriend(1L, 2L);
+        awaitReplica(publisher, follower);
+
+        assertEquals(filmStorage.getAllFilms().getBody(), replicaFilms.getAllFilms().getBody());
+        assertEquals(userStorage.getAllUsers().getBody(), replicaUsers.getAllUsers().getBody());
+        assertArrayEquals(new long[]{1}, replicaFilms.getLikeIds(2L));
+        assertArrayEquals(new long[]{3}, replicaUsers.getFriendIds(2L));
+        assertArrayEquals(new long[0], replicaUsers.getFriendIds(1L));
+        assertArrayEquals(new long[]{1}, replicaSearch.searchFilms("director", 0, 10));
+        assertEquals(0, follower.lagChanges());
+        follower.stop();
+        publisher.stop();
+    }
+
+    @Test
+    void replica_shouldDropStateMissingFromSnapshotOnResync() throws Exception {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        ChangeStreamPublisher publisher = new ChangeStreamPublisher(filmStorage, userStorage,
+                new SimpleMeterRegistry(), InetAddress.getLoopbackAddress(), 0, 4);
+        publisher.start();
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.createFilm(new Film(null, "Film " + i, "Описание", 90 + i, LocalDate.of(2000, 1, i)));
+            userStorage.createUser(user(i));
+        }
+        filmStorage.addLike(2L, 1L);
+        userStorage.addFriend(1L, 2L);
+
+        InMemoryFilmStorage replicaFilms = new InMemoryFilmStorage();
+        InMemoryUserStorage replicaUsers = new InMemoryUserStorage();
+        SearchIndex replicaSearch = new SearchIndex(replicaFilms, replicaUsers);
+        ReplicaFollower follower = new ReplicaFollower(replicaFilms, replicaUsers, new SimpleMeterRegistry(),
+                "127.0.0.1:" + publisher.port());
+        follower.start();
+        awaitReplica(publisher, follower);
+        follower.stop();
+
+        //Пока реплика отключена, буфер переполняется: снимается последний лайк фильма и последняя
+        //дружба, фильм переименовывается. В снимке пустых списков нет вовсе
+        filmStorage.removeLike(2L, 1L);
+        userStorage.removeFriend(1L, 2L);
+        filmStorage.updateFilm(new Film(3L, "Renamed", "Описание", 93, LocalDate.of(2000, 1, 3)));
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.addLike(1L, (long) i);
+        }
+        ReplicaFollower resynced = new ReplicaFollower(replicaFilms, replicaUsers, new SimpleMeterRegistry(),
+                "127.0.0.1:" + publisher.port());
+        resynced.start();
+        awaitReplica(publisher, resynced);
+
+        assertArrayEquals(new long[0], replicaFilms.getLikeIds(2L));
+        assertArrayEquals(new long[]{1}, replicaFilms.getLikedFilmIds(1L));
+        assertArrayEquals(new long[0], replicaUsers.getFriendIds(1L));
+        assertArrayEquals(new long[0], replicaUsers.getFriendIds(2L));
+        assertEquals(List.of(1L, 2L, 3L), replicaFilms.getPopularFilms(3).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+        assertArrayEquals(new long[0], replicaSearch.searchFilms("Film 3", 0, 10));
+        assertArrayEquals(new long[]{3}, replicaSearch.searchFilms("Renamed", 0, 10));
+        resynced.stop();
+        publisher.stop();
+    }
+
+    private static void awaitReplica(ChangeStreamPublisher publisher, ReplicaFollower follower)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (follower.appliedSequence() != publisher.lastSequence() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(publisher.lastSequence(), follower.appliedSequence());
+    }
+
+    private StoragePersistence persistence(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) {
+        return persistence(filmStorage, userStorage, directory);
+    }
+
+    private static StoragePersistence persistence(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage,
+                                                  Path directory) {
+        return new StoragePersistence(filmStorage, userStorage, directory, Duration.ofHours(1), 1024, 128);
+    }
+
+    private static MockHttpServletResponse read(ReplicaWriteFilter filter, String path) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", path), response, new MockFilterChain());
+        return response;
+    }
+
+    private static User user(int i) {
+        User user = new User();
+        user.setEmail("user" + i + "@mail.ru");
+        user.setLogin("user" + i);
+        user.setBirthday(LocalDate.of(1990, 1, i));
+        return user;
+    }
+}
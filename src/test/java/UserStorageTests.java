@@ -0,0 +1,254 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.controller.UserController;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FriendRecommendations;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.StorageListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserStorageTests {
+
+    private InMemoryUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        for (int i = 1; i <= 300; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1));
+            userStorage.createUser(user);
+        }
+    }
+
+    @Test
+    void getCommonFriends_shouldIntersectAndPaginate() {
+        //У первого пользователя 3 друга, у второго - почти все: пересечение пойдет галопом
+        userStorage.addFriend(1L, 5L);
+        userStorage.addFriend(1L, 150L);
+        userStorage.addFriend(1L, 299L);
+        for (long friendId = 3; friendId <= 300; friendId++) {
+            if (friendId != 150) {
+                userStorage.addFriend(2L, friendId);
+            }
+        }
+
+        assertEquals(List.of(5L, 299L), ids(userStorage.getCommonFriends(1L, 2L)));
+        assertEquals(List.of(5L, 299L), ids(userStorage.getCommonFriends(2L, 1L)));
+        assertEquals(List.of(5L), ids(userStorage.getCommonFriends(1L, 2L, null, 1)));
+        assertEquals(List.of(299L), ids(userStorage.getCommonFriends(1L, 2L, 5L, 10)));
+    }
+
+    @Test
+    void getUsers_shouldPageByIdUpToTheEnd() {
+        List<Long> seen = new ArrayList<>();
+        Long after = null;
+        for (List<User> page = userStorage.getUsers(after, 128); !page.isEmpty(); page = userStorage.getUsers(after, 128)) {
+            seen.addAll(ids(page));
+            after = page.get(page.size() - 1).getId();
+        }
+        assertEquals(300, seen.size());
+        assertEquals(300L, seen.get(299));
+        assertEquals(List.of(), userStorage.getUsers(300L, 128));
+        assertEquals(List.of(), userStorage.getUsers(1L, 0));
+        assertEquals(300, userStorage.getUsers(null, Integer.MAX_VALUE).size());
+        assertEquals(List.of(), new InMemoryUserStorage().getUsers(null, 10));
+    }
+
+    @Test
+    void streamUsers_shouldWriteOneUserPerLine() throws IOException {
+        ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+        ResponseEntity<StreamingResponseBody> response = new UserController(
+                new UserService(userStorage, null, null, null), null, mapper, null).streamUsers();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getBody().writeTo(body);
+
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        //Записей больше одной порции отправки: строки не склеиваются на границе порций,
+        //последняя строка тоже завершена переводом строки
+        String text = body.toString(StandardCharsets.UTF_8);
+        assertTrue(text.endsWith("}\n"));
+        String[] lines = text.split("\n");
+        assertEquals(300, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(i + 1L, mapper.readValue(lines[i], User.class).getId());
+        }
+    }
+
+    @Test
+    void getCommonFriends_shouldMergeSimilarSizedSets() {
+        for (long friendId = 3; friendId <= 100; friendId++) {
+            userStorage.addFriend(1L, friendId);
+            if (friendId % 3 == 0) {
+                userStorage.addFriend(2L, friendId);
+            }
+        }
+        userStorage.addFriend(2L, 200L);
+
+        List<Long> common = ids(userStorage.getCommonFriends(1L, 2L));
+        assertEquals(33, common.size());
+        assertEquals(3L, common.get(0));
+        assertEquals(99L, common.get(32));
+        userStorage.removeFriend(2L, 3L);
+        assertEquals(6L, ids(userStorage.getCommonFriends(1L, 2L, null, 1)).get(0));
+    }
+
+    @Test
+    void recommendations_shouldRankByMutualFriendsAndFollowChanges() throws InterruptedException {
+        //Порог параллельности 2 - обход пользователя 1 идет через fork-join; хабы больше 50 друзей не раскрываются.
+        //Ждать пересчета могут 4 пользователя: всплеск ниже переполняет множество, и пересчитываются все активные
+        FriendRecommendations recommendations = new FriendRecommendations(userStorage, 50, 2, 100, 10, 4);
+        userStorage.addFriend(1L, 2L);
+        userStorage.addFriend(1L, 3L);
+        userStorage.addFriend(2L, 4L);
+        userStorage.addFriend(3L, 4L);
+        userStorage.addFriend(2L, 5L);
+        userStorage.addFriend(1L, 100L);
+        for (long friendId = 101; friendId <= 200; friendId++) {
+            userStorage.addFriend(100L, friendId);
+        }
+
+        assertEquals(List.of(4L, 2L, 5L, 1L), pairs(recommendations.recommend(1L, 10)));
+        assertEquals(List.of(4L, 2L), pairs(recommendations.recommend(1L, 1)));
+        //limit из запроса не проверяется: пустой ответ или все, а не исключение
+        assertEquals(List.of(), pairs(recommendations.recommend(1L, 0)));
+        assertEquals(List.of(), pairs(recommendations.recommend(1L, -1)));
+        assertEquals(List.of(4L, 2L, 5L, 1L), pairs(recommendations.recommend(1L, Integer.MAX_VALUE)));
+
+        //Изменение у друга: пересчитывается в фоне
+        for (long friendId = 201; friendId <= 220; friendId++) {
+            userStorage.addFriend(friendId, friendId + 20);
+        }
+        userStorage.addFriend(3L, 5L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!pairs(recommendations.recommend(1L, 10)).equals(List.of(4L, 2L, 5L, 2L))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(4L, 2L, 5L, 2L), pairs(recommendations.recommend(1L, 10)));
+
+        //Изменение у самого пользователя видно сразу
+        userStorage.addFriend(1L, 4L);
+        assertEquals(List.of(5L, 2L), pairs(recommendations.recommend(1L, 10)));
+        recommendations.stop();
+    }
+
+    private static List<Long> pairs(long[] pairs) {
+        return Arrays.stream(pairs)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void publishFriends_shouldStopReadingAfterCancel() {
+        for (long friendId = 2; friendId <= 101; friendId++) {
+            userStorage.addFriend(1L, friendId);
+        }
+        List<Long> received = new ArrayList<>();
+        userStorage.publishFriends(1L).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            //Запрос следующей записи из onNext не углубляет стек, а после отмены записи не приходят
+            @Override
+            public void onNext(User user) {
+                received.add(user.getId());
+                if (received.size() == 30) {
+                    subscription.cancel();
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                throw new AssertionError("Выдача не должна завершиться после отмены");
+            }
+        });
+
+        assertEquals(30, received.size());
+        assertEquals(List.of(2L, 3L, 4L), received.subList(0, 3));
+    }
+
+    @Test
+    void entityVersions_shouldChangeTagsOnlyWithData() {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        EntityVersions versions = new EntityVersions(filmStorage, userStorage);
+        filmStorage.createFilm(new Film(null, "Film", "Description", 100, LocalDate.of(2000, 1, 1)));
+        userStorage.addFriend(1L, 2L);
+        String user = versions.userTag(2L);
+        String friends = versions.friendsTag(1L);
+        String popular = versions.popularTag();
+        String film = versions.filmTag(1L);
+
+        assertEquals(user, versions.userTag(2L));
+        userStorage.addFriend(3L, 4L);
+        assertEquals(friends, versions.friendsTag(1L));
+
+        //Изменение друга меняет и список друзей, где он показан
+        User updated = new User();
+        updated.setId(2L);
+        updated.setEmail("renamed@mail.ru");
+        updated.setLogin("renamed");
+        updated.setBirthday(LocalDate.of(1990, 1, 1));
+        userStorage.updateUser(updated);
+        assertNotEquals(user, versions.userTag(2L));
+        assertNotEquals(friends, versions.friendsTag(1L));
+
+        filmStorage.addLike(1L, 1L);
+        assertNotEquals(popular, versions.popularTag());
+        assertEquals(film, versions.filmTag(1L));
+
+        //Подписчик, добавленный позже версий (как рейтинг "в тренде"), обновляется до смены версии популярного
+        String[] seenByLaterListener = new String[1];
+        filmStorage.addListener(new StorageListener() {
+            @Override
+            public void likeAdded(long filmId, long userId) {
+                seenByLaterListener[0] = versions.popularTag();
+            }
+        });
+        String beforeLike = versions.popularTag();
+        filmStorage.addLike(1L, 2L);
+        assertEquals(beforeLike, seenByLaterListener[0]);
+        assertNotEquals(beforeLike, versions.popularTag());
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+    }
+}
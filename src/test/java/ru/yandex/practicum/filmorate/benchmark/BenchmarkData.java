@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+// Заполнение хранилищ для бенчмарков: каталог заданного размера и случайный граф
+// лайков/дружбы заданной плотности. Seed фиксирован, чтобы прогоны были сравнимы.
+final class BenchmarkData {
+
+    static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    // Логи хранилищ на каждой записи заглушили бы сами замеры
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    static Film film(int i) {
+        return new Film(null, "Film " + i, "Description of film " + i, 60 + i % 120,
+                LocalDate.of(1950 + i % 70, 1 + i % 12, 1 + i % 28));
+    }
+
+    static User user(int i) {
+        User user = new User();
+        user.setEmail("user" + i + "@mail.ru");
+        user.setLogin("user" + i);
+        user.setName("User " + i);
+        user.setBirthday(LocalDate.of(1960 + i % 50, 1 + i % 12, 1 + i % 28));
+        return user;
+    }
+
+    static InMemoryFilmStorage films(int catalogSize, int users, int likesPerFilm) {
+        return films(new InMemoryFilmStorage(), catalogSize, users, likesPerFilm);
+    }
+
+    static <S extends FilmStorage> S films(S storage, int catalogSize, int users, int likesPerFilm) {
+        quietLogging();
+        for (int i = 0; i < catalogSize; i++) {
+            storage.createFilm(film(i));
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (long filmId = 1; filmId <= catalogSize; filmId++) {
+            //Степенное распределение: у немногих фильмов лайков намного больше среднего
+            int likes = (int) Math.min(users, likesPerFilm / Math.max(0.05, random.nextDouble()) / 5);
+            for (int j = 0; j < likes; j++) {
+                storage.addLike(filmId, 1 + random.nextLong(users));
+            }
+        }
+        return storage;
+    }
+
+    static InMemoryUserStorage users(int userCount, int friendsPerUser) {
+        return users(new InMemoryUserStorage(), userCount, friendsPerUser);
+    }
+
+    static <S extends UserStorage> S users(S storage, int userCount, int friendsPerUser) {
+        quietLogging();
+        for (int i = 0; i < userCount; i++) {
+            storage.createUser(user(i));
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+        //Каждая дружба добавляет связь обоим, поэтому ребер вдвое меньше средней степени
+        long edges = (long) userCount * friendsPerUser / 2;
+        for (long i = 0; i < edges; i++) {
+            long userId = 1 + random.nextLong(userCount);
+            long friendId = 1 + random.nextLong(userCount);
+            if (userId != friendId) {
+                storage.addFriend(userId, friendId);
+            }
+        }
+        return storage;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FriendRecommendations;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Общие друзья для "хабов" со 100k+ друзей: два хаба между собой и хаб с обычным пользователем
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommonFriendsBenchmark {
+
+    private static final long FIRST_HUB = 1;
+    private static final long SECOND_HUB = 2;
+    private static final long REGULAR = 3;
+
+    @Param({"1000", "150000"})
+    public int hubDegree;
+
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryUserStorage storage = BenchmarkData.users(hubDegree * 2, 0);
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        for (int i = 0; i < hubDegree; i++) {
+            storage.addFriend(FIRST_HUB, 4 + random.nextLong(hubDegree * 2L - 4));
+            storage.addFriend(SECOND_HUB, 4 + random.nextLong(hubDegree * 2L - 4));
+        }
+        for (int i = 0; i < 50; i++) {
+            storage.addFriend(REGULAR, 4 + random.nextLong(hubDegree * 2L - 4));
+        }
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        userService = new UserService(storage, new FriendRecommendations(storage),
+                new SearchIndex(filmStorage, storage), new EntityVersions(filmStorage, storage));
+    }
+
+    @Benchmark
+    public List<User> hubWithHub() {
+        return userService.getCommonFriends(FIRST_HUB, SECOND_HUB);
+    }
+
+    @Benchmark
+    public List<User> hubWithHubFirstPage() {
+        return userService.getCommonFriends(FIRST_HUB, SECOND_HUB, null, 100);
+    }
+
+    @Benchmark
+    public List<User> hubWithRegular() {
+        return userService.getCommonFriends(FIRST_HUB, REGULAR);
+    }
+}
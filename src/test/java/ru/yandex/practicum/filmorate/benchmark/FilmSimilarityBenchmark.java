@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarity;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Похожие фильмы и рекомендации фильмов по индексу совместных лайков
+// и цена поддержки индекса при постановке лайка. addLikeIndexed включает работу фонового
+// потока индекса (на одном CPU он делит процессор с замером), addLikeQueued - только то,
+// что лайк делает под блокировкой фильма: поток индекса остановлен
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilmSimilarityBenchmark {
+
+    private static final int USERS = 100_000;
+
+    @Param({"200000"})
+    public int catalogSize;
+
+    @Param({"5", "20"})
+    public int likesPerFilm;
+
+    private InMemoryFilmStorage storage;
+    private InMemoryFilmStorage plainStorage;
+    private InMemoryFilmStorage queuedStorage;
+    private FilmSimilarity similarity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new InMemoryFilmStorage();
+        //Порог популярности ниже самых залайканных фильмов набора - работают обе ветки индекса
+        similarity = new FilmSimilarity(storage, 16, likesPerFilm * 3, 1000);
+        BenchmarkData.films(storage, catalogSize, USERS, likesPerFilm);
+        //Лайки загрузки не ждут фонового потока: индекс собирается одним проходом
+        similarity.recovered();
+        plainStorage = BenchmarkData.films(catalogSize, USERS, likesPerFilm);
+        queuedStorage = BenchmarkData.films(catalogSize, USERS, likesPerFilm);
+        new FilmSimilarity(queuedStorage, 16, likesPerFilm * 3, 1000).stop();
+    }
+
+    @Benchmark
+    public List<Long> similar() {
+        return similarity.similar(randomFilm(), 10);
+    }
+
+    @Benchmark
+    public List<Long> recommend() {
+        return similarity.recommend(1 + ThreadLocalRandom.current().nextLong(USERS), 10);
+    }
+
+    @Benchmark
+    public void addLikeIndexed() {
+        storage.addLike(randomFilm(), 1 + ThreadLocalRandom.current().nextLong(USERS));
+    }
+
+    @Benchmark
+    public void addLikeQueued() {
+        queuedStorage.addLike(randomFilm(), 1 + ThreadLocalRandom.current().nextLong(USERS));
+    }
+
+    @Benchmark
+    public void addLikePlain() {
+        plainStorage.addLike(randomFilm(), 1 + ThreadLocalRandom.current().nextLong(USERS));
+    }
+
+    private long randomFilm() {
+        return 1 + ThreadLocalRandom.current().nextLong(catalogSize);
+    }
+}
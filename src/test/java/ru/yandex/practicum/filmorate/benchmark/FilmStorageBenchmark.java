@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.TrendingFilms;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilmStorageBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final Duration DAY = Duration.ofDays(1);
+
+    @Param({"10000", "200000"})
+    public int catalogSize;
+
+    @Param({"5", "50"})
+    public int likesPerFilm;
+
+    private InMemoryFilmStorage storage;
+    private TrendingFilms trending;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new InMemoryFilmStorage();
+        trending = new TrendingFilms(storage, List.of(Duration.ofHours(1), DAY, Duration.ofDays(7)));
+        BenchmarkData.films(storage, catalogSize, USERS, likesPerFilm);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilms() {
+        return storage.getPopularFilms(10);
+    }
+
+    @Benchmark
+    public List<Long> getTrendingFilms() {
+        return trending.top(DAY, 10);
+    }
+
+    // Широкий диапазон: страница набирается обходом каталога
+    @Benchmark
+    public List<Film> findFilmsWide() {
+        return storage.findFilms(new FilmFilter(LocalDate.of(1990, 1, 1), LocalDate.of(1999, 12, 31), null, 99),
+                null, 50);
+    }
+
+    // Узкий диапазон: кандидаты берутся из индекса по дате выхода
+    @Benchmark
+    public List<Film> findFilmsNarrow() {
+        return storage.findFilms(new FilmFilter(LocalDate.of(1995, 2, 1), LocalDate.of(1995, 2, 28), 100, null),
+                null, 50);
+    }
+
+    @Benchmark
+    public void addLike() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        storage.addLike(1 + random.nextLong(catalogSize), 1 + random.nextLong(USERS));
+    }
+
+    @Benchmark
+    public List<Film> getAllFilms() {
+        return storage.getAllFilms().getBody();
+    }
+
+    // Чтение популярного под параллельной записью лайков
+    @Benchmark
+    @Group("concurrentLikes")
+    @GroupThreads(4)
+    public List<Film> concurrentReader() {
+        return storage.getPopularFilms(10);
+    }
+
+    @Benchmark
+    @Group("concurrentLikes")
+    @GroupThreads(4)
+    public void concurrentWriter() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long filmId = 1 + random.nextLong(catalogSize);
+        long userId = 1 + random.nextLong(USERS);
+        if (random.nextBoolean()) {
+            storage.addLike(filmId, userId);
+        } else {
+            storage.removeLike(filmId, userId);
+        }
+    }
+}
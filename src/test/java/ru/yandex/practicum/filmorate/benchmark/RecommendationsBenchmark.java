@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.yandex.practicum.filmorate.storage.FriendRecommendations;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Рекомендации друзей: полный расчет последовательно и через fork-join
+// против чтения готового результата для активных пользователей
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecommendationsBenchmark {
+
+    private static final int ACTIVE_USERS = 1000;
+    private static final int PRECOMPUTED = 50;
+
+    @Param({"100000"})
+    public int userCount;
+
+    @Param({"20", "200"})
+    public int friendsPerUser;
+
+    private FriendRecommendations sequential;
+    private FriendRecommendations parallel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryUserStorage storage = BenchmarkData.users(userCount, friendsPerUser);
+        sequential = new FriendRecommendations(storage, 10_000, Integer.MAX_VALUE, ACTIVE_USERS, PRECOMPUTED);
+        parallel = new FriendRecommendations(storage, 10_000, 1, ACTIVE_USERS, PRECOMPUTED);
+        for (long userId = 1; userId <= ACTIVE_USERS; userId++) {
+            sequential.recommend(userId, PRECOMPUTED);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequential.stop();
+        parallel.stop();
+    }
+
+    //Лимит больше готового - каждый раз полный обход
+    @Benchmark
+    public long[] computeSequential() {
+        return sequential.recommend(randomUser(userCount), PRECOMPUTED + 1);
+    }
+
+    @Benchmark
+    public long[] computeParallel() {
+        return parallel.recommend(randomUser(userCount), PRECOMPUTED + 1);
+    }
+
+    @Benchmark
+    public long[] precomputed() {
+        return sequential.recommend(randomUser(ACTIVE_USERS), 10);
+    }
+
+    private static long randomUser(int bound) {
+        return 1 + ThreadLocalRandom.current().nextLong(bound);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.yandex.practicum.filmorate.persistence.ChangeStreamPublisher;
+import ru.yandex.practicum.filmorate.persistence.ReplicaFollower;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.net.InetAddress;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Цена потока изменений для записи: лайк без реплик и с репликами, подключенными по TCP
+// через loopback, и время, за которое реплики догоняют пачку из BURST лайков.
+// В конце печатается задержка применения на первой реплике
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReplicationBenchmark {
+
+    private static final int CATALOG = 100_000;
+    private static final int USERS = 100_000;
+    private static final int BURST = 10_000;
+
+    @Param({"0", "1", "2"})
+    public int replicas;
+
+    private InMemoryFilmStorage filmStorage;
+    private ChangeStreamPublisher publisher;
+    private ReplicaFollower[] followers;
+    private SimpleMeterRegistry followerRegistry;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        filmStorage = BenchmarkData.films(CATALOG, USERS, 5);
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        followers = new ReplicaFollower[replicas];
+        if (replicas > 0) {
+            publisher = new ChangeStreamPublisher(filmStorage, userStorage, new SimpleMeterRegistry(),
+                    InetAddress.getLoopbackAddress(), 0, 1 << 20);
+            publisher.start();
+            for (int i = 0; i < replicas; i++) {
+                SimpleMeterRegistry registry = new SimpleMeterRegistry();
+                if (i == 0) {
+                    followerRegistry = registry;
+                }
+                followers[i] = new ReplicaFollower(new InMemoryFilmStorage(), new InMemoryUserStorage(), registry,
+                        "127.0.0.1:" + publisher.port());
+                followers[i].start();
+            }
+        }
+        random = new SplittableRandom(BenchmarkData.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (replicas == 0) {
+            return;
+        }
+        Timer delay = followerRegistry.get("filmorate.replication.delay").timer();
+        StringBuilder percentiles = new StringBuilder();
+        for (ValueAtPercentile value : delay.takeSnapshot().percentileValues()) {
+            percentiles.append(String.format(" p%s=%.1f мс", value.percentile() * 100,
+                    value.value(TimeUnit.MILLISECONDS)));
+        }
+        System.out.printf("%nПрименено на реплике: %d, задержка:%s%n", delay.count(), percentiles);
+        for (ReplicaFollower follower : followers) {
+            follower.stop();
+        }
+        publisher.stop();
+    }
+
+    @Benchmark
+    public void like() {
+        long filmId = 1 + random.nextLong(CATALOG);
+        long userId = 1 + random.nextLong(USERS);
+        filmStorage.addLike(filmId, userId);
+    }
+
+    //Время на одно изменение пачки: запись на ведущем плюс ожидание, пока все реплики ее применят
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OperationsPerInvocation(BURST)
+    public void burstUntilReplicated() {
+        for (int i = 0; i < BURST; i++) {
+            like();
+        }
+        if (replicas == 0) {
+            return;
+        }
+        long target = publisher.lastSequence();
+        for (ReplicaFollower follower : followers) {
+            while (follower.appliedSequence() < target) {
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.yandex.practicum.filmorate.controller.ResponseCache;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Чтение фильма по id с неравномерным спросом, близким к закону Ципфа: первый 1% каталога
+// получает около 60% чтений, первые 10% - около 80%. Сравнивается сериализация на каждый
+// запрос и кэш готовых байтов на cacheSize записей; hotFilm - чтение одного горячего фильма
+// (попадание в кэш)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseCacheBenchmark {
+
+    private static final int CATALOG = 100_000;
+    private static final String VERSION = "\"v1\"";
+
+    @Param({"1000", "10000"})
+    public int cacheSize;
+
+    private InMemoryFilmStorage storage;
+    private ObjectMapper objectMapper;
+    private ResponseCache cache;
+    private long reads;
+    private long loads;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = BenchmarkData.films(CATALOG, 1, 0);
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        cache = new ResponseCache(cacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        if (reads > 0) {
+            System.out.printf("%nДоля попаданий: %.2f%n", 1 - (double) loads / reads);
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeEveryTime() throws IOException {
+        return objectMapper.writeValueAsBytes(storage.getFilmById(skewedId()));
+    }
+
+    @Benchmark
+    public byte[] cachedBytes() throws IOException {
+        long id = skewedId();
+        reads++;
+        return cache.get(ResponseCache.Key.film(id), VERSION, () -> {
+            loads++;
+            return objectMapper.writeValueAsBytes(storage.getFilmById(id));
+        });
+    }
+
+    @Benchmark
+    public byte[] hotFilm() throws IOException {
+        return cache.get(ResponseCache.Key.film(1), VERSION,
+                () -> objectMapper.writeValueAsBytes(storage.getFilmById(1L)));
+    }
+
+    //Логарифм id распределен равномерно: P(id <= k) = ln k / ln n, как у Ципфа с показателем 1
+    private static long skewedId() {
+        return (long) Math.pow(CATALOG, ThreadLocalRandom.current().nextDouble());
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Поиск по каталогу со словарем неравномерной частоты: одно слово, два слова
+// и автодополнение по первым трем буквам
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private static final int VOCABULARY = 20_000;
+    private static final String[] SYLLABLES = {"ка", "ро", "ми", "ло", "ве", "ст", "ан", "ор", "ду", "не",
+        "та", "ри", "зо", "пе", "лу", "ша", "ки", "мо", "га", "ре"};
+
+    @Param({"1000000"})
+    public int catalogSize;
+
+    private final String[] words = new String[VOCABULARY];
+    private String[] names;
+    private SearchIndex search;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.quietLogging();
+        SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        for (int i = 0; i < VOCABULARY; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int s = 2 + random.nextInt(3); s > 0; s--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            words[i] = word.toString();
+        }
+        InMemoryFilmStorage storage = new InMemoryFilmStorage();
+        search = new SearchIndex(storage, new InMemoryUserStorage());
+        names = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            names[i] = text(random, 1 + random.nextInt(4));
+            storage.createFilm(new Film(null, names[i], text(random, 8 + random.nextInt(9)), 90,
+                    LocalDate.of(1950 + i % 70, 1, 1)));
+        }
+    }
+
+    @Benchmark
+    public long[] oneWord() {
+        return search.searchFilms(randomName().split(" ")[0], 0, 20);
+    }
+
+    @Benchmark
+    public long[] twoWords() {
+        String[] name = randomName().split(" ");
+        return search.searchFilms(name[0] + " " + name[name.length - 1] + " ", 0, 20);
+    }
+
+    @Benchmark
+    public long[] autocomplete() {
+        return search.searchFilms(randomName().substring(0, 3), 0, 20);
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    //Частые слова встречаются намного чаще редких, как в живом тексте
+    private String text(SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double r = random.nextDouble();
+            text.append(i == 0 ? "" : " ").append(words[(int) (VOCABULARY * r * r * r)]);
+        }
+        return text.toString();
+    }
+}
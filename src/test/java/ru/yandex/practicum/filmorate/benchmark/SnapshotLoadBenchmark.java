@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.persistence.StoragePersistence;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Время холодного старта: загрузка снимка с каталогом и графами лайков/дружбы
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class SnapshotLoadBenchmark {
+
+    @Param({"200000"})
+    public int entities;
+
+    @Param({"10"})
+    public int edgesPerEntity;
+
+    private Path directory;
+    private StoragePersistence restored;
+
+    @Setup(Level.Trial)
+    public void writeSnapshot() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("filmorate-snapshot");
+        InMemoryFilmStorage filmStorage = BenchmarkData.films(entities, entities, edgesPerEntity);
+        InMemoryUserStorage userStorage = BenchmarkData.users(entities, edgesPerEntity);
+        StoragePersistence persistence = persistence(filmStorage, userStorage);
+        persistence.start();
+        persistence.snapshot();
+        persistence.stop();
+    }
+
+    @Benchmark
+    public InMemoryFilmStorage load() throws IOException {
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        restored = persistence(filmStorage, new InMemoryUserStorage());
+        restored.start();
+        return filmStorage;
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() throws InterruptedException {
+        restored.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSnapshot() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private StoragePersistence persistence(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage) {
+        return new StoragePersistence(filmStorage, userStorage, directory, Duration.ofDays(1), 1024, 1024);
+    }
+}
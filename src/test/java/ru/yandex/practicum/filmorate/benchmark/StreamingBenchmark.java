@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+// Выдача популярного клиенту: JSON-массив из списка (как GET /films/popular) против построчной
+// выдачи из издателя порциями по 256 одним генератором (как с Accept: application/x-ndjson). Ответ пишется
+// в поток, который все отбрасывает; память на запрос видна с -prof gc (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreamingBenchmark {
+
+    private static final int CATALOG = 200_000;
+    private static final int BATCH = 256;
+
+    @Param({"100", "100000"})
+    public int count;
+
+    private InMemoryFilmStorage storage;
+    private ObjectMapper objectMapper;
+    private ObjectWriter filmWriter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = BenchmarkData.films(CATALOG, 10_000, 5);
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        filmWriter = objectMapper.writerFor(Film.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Benchmark
+    public void popularList() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), storage.getPopularFilms(count));
+    }
+
+    @Benchmark
+    public void popularPublisher() throws IOException {
+        try (SequenceWriter values = filmWriter.writeValues(OutputStream.nullOutputStream())) {
+            publish(values);
+        }
+    }
+
+    private void publish(SequenceWriter values) {
+        storage.publishPopularFilms(count).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+            private int left;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                left = BATCH;
+                subscription.request(BATCH);
+            }
+
+            @Override
+            public void onNext(Film film) {
+                try {
+                    values.write(film);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (--left == 0) {
+                    left = BATCH;
+                    flush(values);
+                    subscription.request(BATCH);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    private static void flush(SequenceWriter values) {
+        try {
+            values.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
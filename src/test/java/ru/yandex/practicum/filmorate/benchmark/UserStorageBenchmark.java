@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.FriendRecommendations;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.SearchIndex;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserStorageBenchmark {
+
+    @Param({"10000", "100000"})
+    public int userCount;
+
+    @Param({"10", "200"})
+    public int friendsPerUser;
+
+    private InMemoryUserStorage storage;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = BenchmarkData.users(userCount, friendsPerUser);
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        userService = new UserService(storage, new FriendRecommendations(storage),
+                new SearchIndex(filmStorage, storage), new EntityVersions(filmStorage, storage));
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return storage.getFriends(randomUser());
+    }
+
+    @Benchmark
+    public List<User> storageGetCommonFriends() {
+        return storage.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<User> serviceGetCommonFriends() {
+        return userService.getCommonFriends(randomUser(), randomUser());
+    }
+
+    // Чтение друзей под параллельным изменением графа
+    @Benchmark
+    @Group("concurrentFriends")
+    @GroupThreads(4)
+    public List<User> concurrentReader() {
+        return storage.getFriends(randomUser());
+    }
+
+    @Benchmark
+    @Group("concurrentFriends")
+    @GroupThreads(4)
+    public void concurrentWriter() {
+        long userId = randomUser();
+        long friendId = randomUser();
+        if (userId == friendId) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            storage.addFriend(userId, friendId);
+        } else {
+            storage.removeFriend(userId, friendId);
+        }
+    }
+
+    private long randomUser() {
+        return 1 + ThreadLocalRandom.current().nextLong(userCount);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.validate.FilmValidate;
+
+import java.util.concurrent.TimeUnit;
+
+// Цена отказа в записи против успешной записи: обновление существующего фильма и пользователя
+// корректными данными и попытки создать или обновить их с ошибкой в первом и в последнем правиле.
+// validateThrowing - проверка через исключение (для вызывающих, которым оно удобнее).
+// Логи отключены, чтобы сравнивать только проверку и ответ; память на запрос видна с -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidationBenchmark {
+
+    private static final int CATALOG = 10_000;
+
+    private InMemoryFilmStorage filmStorage;
+    private InMemoryUserStorage userStorage;
+    private Film validFilm;
+    private Film emptyName;
+    private Film negativeDuration;
+    private User validUser;
+    private User badEmail;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+        filmStorage = BenchmarkData.films(CATALOG, 1, 0);
+        userStorage = BenchmarkData.users(CATALOG, 0);
+        validFilm = BenchmarkData.film(7);
+        validFilm.setId(7L);
+        emptyName = BenchmarkData.film(8);
+        emptyName.setName("");
+        negativeDuration = BenchmarkData.film(9);
+        negativeDuration.setId(9L);
+        negativeDuration.setDuration(-1);
+        validUser = BenchmarkData.user(7);
+        validUser.setId(7L);
+        badEmail = BenchmarkData.user(8);
+        badEmail.setEmail("mail.ru");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateValidFilm() {
+        return filmStorage.updateFilm(validFilm);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createInvalidFilm() {
+        return filmStorage.createFilm(emptyName);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateInvalidFilm() {
+        return filmStorage.updateFilm(negativeDuration);
+    }
+
+    @Benchmark
+    public String validateThrowing() {
+        try {
+            FilmValidate.validateFilm(emptyName);
+            return null;
+        } catch (ValidationException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<?> updateValidUser() {
+        return userStorage.updateUser(validUser);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> createInvalidUser() {
+        return userStorage.createUser(badEmail);
+    }
+}
@@ -0,0 +1,154 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный тест: поднимает приложение на пуле потоков Tomcat и на виртуальных потоках
+// и гоняет одинаковую смесь запросов с заданным числом параллельных клиентов.
+// mvn -P loadtest test-compile exec:exec -Dloadtest.args="1000 20"
+// (клиенты, секунды замера на режим). Закрепления виртуальных потоков печатает JVM
+// благодаря -Djdk.tracePinnedThreads=short в профиле.
+public final class VirtualThreadLoadTest {
+
+    private static final int FILMS = 10_000;
+    private static final int USERS = 10_000;
+
+    private VirtualThreadLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        List<String> results = new ArrayList<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            results.add(run(virtual, clients, seconds));
+        }
+        System.out.printf("%n%d клиентов, %d с на режим%n", clients, seconds);
+        System.out.println("| Потоки | запросов/с | p50, мс | p99, мс | p999, мс | ошибок |");
+        System.out.println("|---|---|---|---|---|---|");
+        results.forEach(System.out::println);
+    }
+
+    private static String run(boolean virtual, int clients, int seconds) throws Exception {
+        BenchmarkData.quietLogging();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .properties("server.port=0",
+                        "spring.threads.virtual.enabled=" + virtual,
+                        "filmorate.access-log.enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        try {
+            BenchmarkData.films(context.getBean(InMemoryFilmStorage.class), FILMS, USERS, 20);
+            BenchmarkData.users(context.getBean(InMemoryUserStorage.class), USERS, 50);
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient client = HttpClient.newBuilder()
+                        .executor(executor)
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .build();
+                //Прогрев: JIT и соединения
+                load(client, executor, base, clients, Math.max(2, seconds / 4));
+                Result result = load(client, executor, base, clients, seconds);
+                long[] latencies = result.latencies();
+                return String.format("| %s | %.0f | %.2f | %.2f | %.2f | %d |",
+                        virtual ? "виртуальные" : "пул Tomcat (200)",
+                        latencies.length / (double) seconds,
+                        percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                        result.errors());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Result load(HttpClient client, ExecutorService executor, String base, int clients, int seconds)
+            throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> workers = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            workers.add(executor.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = nextRequest(base, random);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        long[] all = new long[0];
+        for (Future<long[]> worker : workers) {
+            long[] latencies = worker.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + latencies.length);
+            System.arraycopy(latencies, 0, all, offset, latencies.length);
+        }
+        Arrays.sort(all);
+        return new Result(all, errors.get());
+    }
+
+    // Смесь запросов: чтение популярного, друзей и общих друзей, постановка лайка
+    private static HttpRequest nextRequest(String base, ThreadLocalRandom random) {
+        long user = 1 + random.nextLong(USERS);
+        int kind = random.nextInt(10);
+        String path;
+        if (kind < 4) {
+            path = "/films/popular?count=10";
+        } else if (kind < 7) {
+            path = "/users/" + user + "/friends";
+        } else if (kind < 9) {
+            path = "/users/" + user + "/friends/common/" + (1 + random.nextLong(USERS));
+        } else {
+            return HttpRequest.newBuilder(URI.create(base + "/films/" + (1 + random.nextLong(FILMS)) + "/like/" + user))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .build();
+        }
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .GET()
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}